@@ -0,0 +1,89 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * class AuthorIndex maps authors to their books, each author's books kept sorted by
+ * year (and by product ID within a year).
+ *
+ * Authors are matched ignoring case. Looking up an author is one hash probe that
+ * returns the already sorted list. The same lists are also kept in a sorted map so
+ * every author whose name starts with a prefix can be found without a scan.
+ *
+ * The index is filled as books are added to the catalog. Its methods are
+ * synchronized and lookups return copies, so callers may keep or change the lists.
+ */
+public class AuthorIndex {
+    private HashMap<String, ArrayList<Book>> byAuthor;
+    private TreeMap<String, ArrayList<Book>> sortedAuthors;
+
+    /**
+     * Constructs an empty index.
+     */
+    public AuthorIndex() {
+        byAuthor = new HashMap<String, ArrayList<Book>>();
+        sortedAuthors = new TreeMap<String, ArrayList<Book>>();
+    }
+
+    /**
+     * Adds a book under its author.
+     * @param book - Book to be added
+     * @throws InvalidNameException - If the book has no author
+     */
+    public synchronized void add(Book book) {
+        String key = keyOf(book.getAuthor());
+        ArrayList<Book> books = byAuthor.get(key);
+        if (books == null) {
+            books = new ArrayList<Book>();
+            byAuthor.put(key, books);
+            sortedAuthors.put(key, books);
+        }
+        int id = ProductCatalog.parseId(book.getId());
+        int at = books.size();
+        while (at > 0 && isAfter(books.get(at - 1), book.getYear(), id)) {   // Books normally arrive in ID order
+            at--;
+        }
+        books.add(at, book);
+    }
+
+    /**
+     * @param author - Author's name, in any case
+     * @return books - The author's books sorted by year, or an empty list if there are none
+     * @throws InvalidNameException - If author is null
+     */
+    public synchronized ArrayList<Book> booksBy(String author) {
+        ArrayList<Book> books = byAuthor.get(keyOf(author));
+        return books == null ? new ArrayList<Book>() : new ArrayList<Book>(books);
+    }
+
+    /**
+     * @param prefix - Start of an author's name, in any case
+     * @return books - Books of every author whose name starts with prefix, authors in alphabetical
+     * order and each author's books sorted by year; an empty list if there are none
+     * @throws InvalidNameException - If prefix is null
+     */
+    public synchronized ArrayList<Book> booksByPrefix(String prefix) {
+        ArrayList<Book> books = new ArrayList<Book>();
+        String key = keyOf(prefix);
+        for (Map.Entry<String, ArrayList<Book>> e : sortedAuthors.tailMap(key, true).entrySet()) {
+            if (!e.getKey().startsWith(key)) {
+                break;
+            }
+            books.addAll(e.getValue());
+        }
+        return books;
+    }
+
+    private static boolean isAfter(Book b, int year, int id) {
+        return b.getYear() > year || (b.getYear() == year && ProductCatalog.parseId(b.getId()) > id);
+    }
+
+    private static String keyOf(String author) {
+        if (author == null) {
+            throw new InvalidNameException("Invalid Author Name");
+        }
+        return author.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,134 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * class BestsellerBoard keeps products ranked by the number of times they were ordered.
+ *
+ * Products are kept in buckets by order count, highest count first, and inside
+ * a bucket by product ID. Recording an order moves one product from its bucket
+ * to the next, which is O(log N). Listing the top K products walks the buckets
+ * from the top and stops after K products, which is O(K + log N). Nothing is
+ * ever sorted as a whole.
+ */
+public class BestsellerBoard {
+    private static final Comparator<Product> BY_ID = Comparator.comparingInt(p -> ProductCatalog.parseId(p.getId()));
+
+    private Map<Product, Integer> counts;
+    private TreeMap<Integer, TreeSet<Product>> buckets;
+
+    /**
+     * Constructs an empty board.
+     */
+    public BestsellerBoard() {
+        counts = new HashMap<Product, Integer>();
+        buckets = new TreeMap<Integer, TreeSet<Product>>(Comparator.reverseOrder());
+    }
+
+    /**
+     * Adds to the number of times a product has been ordered.
+     * @param product - Product that was ordered
+     * @param times - Number of new orders, must be positive
+     */
+    public synchronized void add(Product product, int times) {
+        Integer old = counts.get(product);
+        move(product, old, (old == null ? 0 : old) + times);
+    }
+
+    /**
+     * Sets the number of times a product has been ordered.
+     * @param product - A product
+     * @param count - Its total number of orders, must be positive
+     */
+    public synchronized void set(Product product, int count) {
+        Integer old = counts.get(product);
+        if (old == null || old != count) {
+            move(product, old, count);
+        }
+    }
+
+    /**
+     * Moves a product from the bucket of its old count to the bucket of its new one.
+     */
+    private void move(Product product, Integer old, int count) {
+        if (old != null) {   // Takes the product out of its old bucket
+            TreeSet<Product> bucket = buckets.get(old);
+            bucket.remove(product);
+            if (bucket.isEmpty()) {
+                buckets.remove(old);
+            }
+        }
+        counts.put(product, count);
+        TreeSet<Product> bucket = buckets.get(count);
+        if (bucket == null) {
+            bucket = new TreeSet<Product>(BY_ID);
+            buckets.put(count, bucket);
+        }
+        bucket.add(product);
+    }
+
+    /**
+     * @param product - A product
+     * @return count - Number of times the product has been ordered
+     */
+    public synchronized int countOf(Product product) {
+        Integer count = counts.get(product);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * @return size - Number of products that have been ordered at least once
+     */
+    public synchronized int size() {
+        return counts.size();
+    }
+
+    /**
+     * Lists the most ordered products, most ordered first; products ordered equally often
+     * are listed by ID.
+     * @param k - Maximum number of products to list
+     * @return top - Up to k entries of product and order count
+     */
+    public synchronized ArrayList<Entry> top(int k) {
+        ArrayList<Entry> top = new ArrayList<Entry>(Math.min(k, counts.size()));
+        for (Map.Entry<Integer, TreeSet<Product>> bucket : buckets.entrySet()) {
+            for (Product p : bucket.getValue()) {
+                if (top.size() >= k) {
+                    return top;
+                }
+                top.add(new Entry(p, bucket.getKey()));
+            }
+        }
+        return top;
+    }
+
+    /**
+     * A product together with the number of times it was ordered.
+     */
+    public static class Entry {
+        private final Product product;
+        private final int count;
+
+        Entry(Product product, int count) {
+            this.product = product;
+            this.count = count;
+        }
+
+        /**
+         * @return product - The product
+         */
+        public Product getProduct() {
+            return product;
+        }
+
+        /**
+         * @return count - Number of times the product was ordered
+         */
+        public int getCount() {
+            return count;
+        }
+    }
+}
@@ -9,10 +9,16 @@ public class Book extends Product
   private String title;
   private int year;
   
-  // Stock related information NOTE: inherited stockCount variable is used for EBooks
-  int paperbackStock;
-  int hardcoverStock;
+  // Stock related information: each format is a variant slot in the inherited stock counter.
+  // NOTE: slot 0 is the slot a plain Product uses, so it holds EBook stock
+  static final int EBOOK = 0;
+  static final int PAPERBACK = 1;
+  static final int HARDCOVER = 2;
+  private static final int VARIANTS = 3;
+  private static final String[] FORMATS = {"EBook", "Paperback", "Hardcover"};   // Options string of each slot
+
   public Book(){
+    super("Product", "001", 0.0, Product.Category.BOOKS, 0.0, VARIANTS);
     this.author = "";
   }
   
@@ -31,9 +37,10 @@ public class Book extends Product
   {
   	 // Make use of the constructor in the super class Product. Initialize additional Book instance variables. 
   	 // Set category to BOOKS 
-    super(name, id, price, 100000, Product.Category.BOOKS, 0.0);
-    this.paperbackStock = paperbackStock;
-    this.hardcoverStock = hardcoverStock;
+    super(name, id, price, Product.Category.BOOKS, 0.0, VARIANTS);
+    getStock().set(EBOOK, 100000);
+    getStock().set(PAPERBACK, paperbackStock);
+    getStock().set(HARDCOVER, hardcoverStock);
     this.title = title;
     this.author = author;
     this.year = year;
@@ -46,11 +53,35 @@ public class Book extends Product
    */
   public boolean validOptions(String productOptions)
   {
-    if (productOptions.equalsIgnoreCase("Paperback") || productOptions.equalsIgnoreCase("Hardcover") || productOptions.equalsIgnoreCase("Ebook")) {
-      return true;
-    } else {
-      return false;
+    return variantOf(productOptions) >= 0;
+  }
+
+  /**
+   * Maps a book format to its variant slot
+   * @param productOptions - Format of book: "Hardcover", "Paperback" or "EBook"
+   * @return variant - Slot holding the format's stock, or -1 if the format is not valid
+   */
+  public int variantOf(String productOptions)
+  {
+    if (productOptions == null) {
+      return -1;
+    } else if (productOptions.equalsIgnoreCase("Hardcover")) {
+      return HARDCOVER;
+    } else if (productOptions.equalsIgnoreCase("Paperback")) {
+      return PAPERBACK;
+    } else if (productOptions.equalsIgnoreCase("EBook")) {
+      return EBOOK;
     }
+    return -1;
+  }
+
+  /**
+   * @param variant - A variant slot returned by variantOf()
+   * @return productOptions - The format stored in that slot: "EBook", "Paperback" or "Hardcover"
+   */
+  public String optionsOf(int variant)
+  {
+    return FORMATS[variant];
   }
   /**
    * @return author - Name of author
@@ -58,6 +89,12 @@ public class Book extends Product
   public String getAuthor() {
     return this.author;
   }
+  /**
+   * @return title - Title of the book
+   */
+  public String getTitle() {
+    return this.title;
+  }
   /**
    * @return year - Year the book was made
    */
@@ -72,12 +109,9 @@ public class Book extends Product
    */
   public int getStockCount(String productOptions)
 	{
-    if (productOptions.equalsIgnoreCase("Hardcover")) {
-      return hardcoverStock;
-    } else if (productOptions.equalsIgnoreCase("Paperback")) {
-      return paperbackStock;
-    } else if (productOptions.equalsIgnoreCase("EBook")) {
-      return super.getStockCount(productOptions);
+    int variant = variantOf(productOptions);
+    if (variant >= 0) {
+      return getStock().get(variant);
     }
   	return 1;
 	}
@@ -89,15 +123,10 @@ public class Book extends Product
    */
   public void setStockCount(int stockCount, String productOptions)
 	{
-    // Use the productOptions to check for (and set) the number of stock for "Paperback" etc
-   	// Use the variables paperbackStock and hardcoverStock at the top. 
-   	// For "EBook", set the inherited stockCount variable.
-    if (productOptions.equalsIgnoreCase("Hardcover")) {
-      hardcoverStock = stockCount;
-    } else if (productOptions.equalsIgnoreCase("Paperback")) {
-      paperbackStock = stockCount;
-    } else if (productOptions.equalsIgnoreCase("EBook")) {
-      super.setStockCount(stockCount, productOptions);
+    // Use the productOptions to find (and set) the variant slot for "Paperback" etc
+    int variant = variantOf(productOptions);
+    if (variant >= 0) {
+      getStock().set(variant, stockCount);
     }
 	}
   
@@ -107,12 +136,9 @@ public class Book extends Product
   */
   public void reduceStockCount(String productOptions)
 	{
-    if (productOptions.equalsIgnoreCase("Hardcover")) {
-      hardcoverStock -= 1;
-    } else if (productOptions.equalsIgnoreCase("Paperback")) {
-      paperbackStock -= 1;
-    } else if (productOptions.equalsIgnoreCase("EBook")) {
-      super.setStockCount(-1, productOptions);
+    int variant = variantOf(productOptions);
+    if (variant >= 0) {
+      getStock().add(variant, -1);
     }
 	}
   /**
@@ -122,7 +148,18 @@ public class Book extends Product
   {
     super.print();
     System.out.print("     ");
-    System.out.printf("Paperback Stock:%-5s Hardcover Stock:%-5s Title:%-5s Author:%-5s Year:%-5s", paperbackStock, hardcoverStock, title, author, year);
+    System.out.printf("Paperback Stock:%-5s Hardcover Stock:%-5s Title:%-5s Author:%-5s Year:%-5s", getStock().get(PAPERBACK), getStock().get(HARDCOVER), title, author, year);
   	
   }
+
+  /**
+   * Renders the same information as print() into a Renderer
+   * @param out - Renderer the row is appended to
+   */
+  public void render(Renderer out)
+  {
+    super.render(out);
+    out.text("     ").text("Paperback Stock:").left(getStock().get(PAPERBACK), 5).text(" Hardcover Stock:").left(getStock().get(HARDCOVER), 5)
+        .text(" Title:").left(title, 5).text(" Author:").left(author, 5).text(" Year:").left(year, 5);
+  }
 }
@@ -1,25 +1,265 @@
 import java.util.ArrayList;
+import java.util.HashMap;
 
 /**
- * Class Cart creates a Cart object for a customer. The Cart stores a list of
+ * Class Cart creates a Cart object for a customer. The Cart stores the
  * CartItem's that the customer has added to their cart.
+ *
+ * Each line holds a quantity of one product in one format. Adding the product and
+ * format that was added last raises that line's quantity instead of adding a line,
+ * so repeated adds are merged; adding it again after something else starts a new
+ * line. Lines are kept in the order they were added, which is the order the cart is
+ * listed and ordered in, exactly as if every unit had its own entry: adding A, B and
+ * A again lists A, B, A.
+ *
+ * Lines are linked in that order, and each line is also linked to the next line of
+ * the same product. A map from each product to its first line finds a product
+ * without scanning the cart, and removing lowers the quantity of that first line,
+ * the earliest unit added. A product only has more than one line when it was added
+ * in several formats or in between other products.
+ *
+ * A customer's cart is created when they first add something and is released when
+ * it is emptied or expires (see CartExpiry); a released cart is empty for good and
+ * the customer gets a new one the next time they add something.
+ *
+ * A Cart is not thread-safe; callers synchronize on the cart.
  */
 public class Cart {
-    private ArrayList<CartItem> cart;
-    
+    private HashMap<Product, CartItem> firstOf;
+    private CartItem first;     // Lines in the order they were added
+    private CartItem last;
+    private int units;
+    private int lineCount;
+    private final Customer owner;
+    private volatile boolean released;
+
+    // Kept by CartExpiry, under its lock and the cart's
+    long deadline;          // When the cart expires, in milliseconds
+    int wheelLevel = -1;    // Level of the timing wheel the cart is in, -1 if it is not in the wheel
+    int wheelSlot;
+    Cart wheelNext;
+    Cart wheelPrev;
+    int accountedLines;     // Lines counted against the wheel's budget
+
     /**
      * Constructs a cart object.
      */
     public Cart() {
-        cart = new ArrayList<CartItem>();
+        this(null);
+    }
+
+    /**
+     * Constructs a cart object for a customer.
+     * @param owner - Customer whose cart this is, who drops it when it is released
+     */
+    public Cart(Customer owner) {
+        firstOf = new HashMap<Product, CartItem>();
+        this.owner = owner;
+    }
+
+    /**
+     * Adds units of a product in a format, merging them into the last line if that is
+     * the same product and format.
+     * @param product - Product to be added
+     * @param variant - Variant slot of the format, as returned by product.variantOf()
+     * @param quantity - Number of units to add
+     */
+    public void add(Product product, int variant, int quantity) {
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("Quantity must be positive: " + quantity);
+        }
+        units += quantity;
+        if (last != null && last.getProduct() == product && last.getVariant() == variant) {
+            last.quantity += quantity;
+            return;
+        }
+        CartItem line = new CartItem(product, variant, quantity);
+        line.previous = last;
+        if (last != null) {
+            last.next = line;
+        } else {
+            first = line;
+        }
+        last = line;
+        lineCount++;
+        CartItem same = firstOf.get(product);
+        if (same == null) {
+            firstOf.put(product, line);
+        } else {
+            while (same.nextOfProduct != null) {
+                same = same.nextOfProduct;
+            }
+            same.nextOfProduct = line;
+        }
+    }
+
+    /**
+     * Removes the earliest added unit of a product, in whatever format it is.
+     * @param product - Product to be removed
+     * @return boolean - True if the product was in the cart
+     */
+    public boolean remove(Product product) {
+        CartItem line = firstOf.get(product);
+        return line != null && remove(product, line.getVariant(), 1);
+    }
+
+    /**
+     * Removes units of a product in a format, earliest added first; a line goes when
+     * its quantity reaches zero.
+     * @param product - Product to be removed
+     * @param variant - Variant slot of the format
+     * @param quantity - Number of units to remove; at most the units in the cart are removed
+     * @return boolean - True if the product was in the cart in that format
+     */
+    public boolean remove(Product product, int variant, int quantity) {
+        boolean found = false;
+        CartItem before = null;     // Line of the same product before line
+        CartItem line = firstOf.get(product);
+        while (line != null && quantity > 0) {
+            if (line.getVariant() == variant) {
+                found = true;
+                int removed = Math.min(quantity, line.quantity);
+                line.quantity -= removed;
+                units -= removed;
+                quantity -= removed;
+                if (line.quantity == 0) {
+                    unlink(line, before);
+                    line = before != null ? before.nextOfProduct : firstOf.get(product);  // Skips a line merged into before
+                    continue;
+                }
+            }
+            before = line;
+            line = line.nextOfProduct;
+        }
+        return found;
+    }
+
+    /**
+     * Takes an emptied line out of the cart. If that leaves two lines of the same product
+     * and format next to each other, they are merged, as if added one after the other.
+     */
+    private void unlink(CartItem line, CartItem before) {
+        if (before != null) {
+            before.nextOfProduct = line.nextOfProduct;
+        } else if (line.nextOfProduct != null) {
+            firstOf.put(line.getProduct(), line.nextOfProduct);
+        } else {
+            firstOf.remove(line.getProduct());
+        }
+        CartItem previous = line.previous;
+        CartItem next = line.next;
+        if (previous != null) {
+            previous.next = next;
+        } else {
+            first = next;
+        }
+        if (next != null) {
+            next.previous = previous;
+        } else {
+            last = previous;
+        }
+        lineCount--;
+        if (previous != null && next != null && previous.getProduct() == next.getProduct()
+                && previous.getVariant() == next.getVariant()) {
+            previous.quantity += next.quantity;     // next is previous's next line of the product
+            previous.nextOfProduct = next.nextOfProduct;
+            previous.next = next.next;
+            if (next.next != null) {
+                next.next.previous = previous;
+            } else {
+                last = previous;
+            }
+            lineCount--;
+        }
+    }
+
+    /**
+     * @param product - A product
+     * @param variant - Variant slot of the format
+     * @return quantity - Number of units of the product in that format in the cart
+     */
+    public int quantityOf(Product product, int variant) {
+        int quantity = 0;
+        for (CartItem line = firstOf.get(product); line != null; line = line.nextOfProduct) {
+            if (line.getVariant() == variant) {
+                quantity += line.quantity;
+            }
+        }
+        return quantity;
     }
 
     /**
-     * @return cart - List of items in the customer's cart.
+     * @return units - Number of units in the cart, counting every line's quantity
+     */
+    public int units() {
+        return units;
+    }
+
+    /**
+     * @return lineCount - Number of lines
+     */
+    public int lineCount() {
+        return lineCount;
+    }
+
+    /**
+     * @return boolean - True if the cart has nothing in it
+     */
+    public boolean isEmpty() {
+        return units == 0;
+    }
+
+    /**
+     * @return items - Copies of the cart's lines, in the order they were added, which stay as they are when the cart changes
+     */
+    public ArrayList<CartItem> getItems() {
+        ArrayList<CartItem> items = new ArrayList<CartItem>(lineCount);
+        for (CartItem line = first; line != null; line = line.next) {
+            items.add(new CartItem(line.getProduct(), line.getVariant(), line.quantity));
+        }
+        return items;
+    }
+
+    /**
+     * @return cart - One CartItem per unit, in the order they were added; a copy, so changing it does not change the cart
      */
     public ArrayList<CartItem> getCartList() {
+        ArrayList<CartItem> cart = new ArrayList<CartItem>(units);
+        for (CartItem line = first; line != null; line = line.next) {
+            for (int i = 0; i < line.quantity; i++) {
+                cart.add(new CartItem(line.getProduct(), line.getVariant()));
+            }
+        }
         return cart;
     }
 
+    /**
+     * Empties the cart.
+     */
+    public void clear() {
+        firstOf.clear();
+        first = null;
+        last = null;
+        units = 0;
+        lineCount = 0;
+    }
 
+    /**
+     * Empties the cart for good and drops it from its customer. The caller must hold the
+     * cart's lock and have taken it out of the CartExpiry wheel.
+     */
+    public void release() {
+        clear();
+        released = true;
+        if (owner != null) {
+            owner.releaseCart(this);
+        }
+    }
+
+    /**
+     * @return boolean - True if the cart was released; callers then ask the customer for a new one
+     */
+    public boolean isReleased() {
+        return released;
+    }
 }
@@ -0,0 +1,277 @@
+import java.util.ArrayList;
+
+/**
+ * class CartExpiry releases carts that have not been touched for a while, and the
+ * least recently touched carts when there are too many cart lines in memory.
+ *
+ * Carts are kept in a hierarchical timing wheel: four levels of 64 slots, where a
+ * slot of level 0 covers one tick and a slot of level n covers 64^n ticks. A cart is
+ * put in the slot its deadline falls in, at the lowest level whose range reaches
+ * that far; as time passes, the slots of higher levels are moved down a level
+ * (cascaded) once they come within its range. Touching, removing and expiring a
+ * cart is a constant-time list operation, and advancing the wheel only looks at the
+ * slots that come due, never at every cart. Each cart is its own list node, so the
+ * wheel allocates nothing per cart.
+ *
+ * The budget is a number of cart lines (one per product and format), which is what
+ * a cart's memory grows with. When the carts in the wheel hold more lines than that,
+ * carts are released in deadline order, which is the order they were last touched.
+ *
+ * The wheel has its own lock. touch() and remove() are called with the cart's lock
+ * held; expire() takes each released cart's lock without holding the wheel's, and
+ * leaves alone a cart that was touched again in the meantime.
+ */
+public class CartExpiry {
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int LEVELS = 4;
+    private static final long SPAN = 1L << (SLOT_BITS * LEVELS);    // Ticks the wheel reaches ahead
+
+    private final long tickMillis;
+    private long ttlMillis;
+    private volatile int maxLines;
+    private final Cart[][] slots = new Cart[LEVELS][SLOTS];     // First cart of each slot's list
+    private final Cart[][] tails = new Cart[LEVELS][SLOTS];     // Last cart, so carts are added in order
+    private volatile long currentTick;  // Volatile, like lines and maxLines, for expire()'s check without the lock
+    private int carts;
+    private volatile long lines;
+
+    /**
+     * Constructs an empty wheel.
+     * @param ttlMillis - How long a cart is kept after it was last touched
+     * @param tickMillis - Resolution of the wheel; carts expire up to one tick late
+     * @param maxLines - Most cart lines kept before the oldest carts are released
+     * @param now - Current time in milliseconds
+     */
+    public CartExpiry(long ttlMillis, long tickMillis, int maxLines, long now) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("Tick must be positive: " + tickMillis);
+        }
+        this.tickMillis = tickMillis;
+        this.currentTick = now / tickMillis;
+        setTtl(ttlMillis);
+        setMaxLines(maxLines);
+    }
+
+    /**
+     * Changes how long carts are kept; carts already in the wheel keep their deadline
+     * until they are touched again.
+     * @param ttlMillis - How long a cart is kept after it was last touched
+     */
+    public synchronized void setTtl(long ttlMillis) {
+        if (ttlMillis <= 0) {
+            throw new IllegalArgumentException("Cart time to live must be positive: " + ttlMillis);
+        }
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * Changes the budget, which is applied on the next expire().
+     * @param maxLines - Most cart lines kept before the oldest carts are released
+     */
+    public synchronized void setMaxLines(int maxLines) {
+        if (maxLines < 0) {
+            throw new IllegalArgumentException("Cart line budget must not be negative: " + maxLines);
+        }
+        this.maxLines = maxLines;
+    }
+
+    /**
+     * Puts a cart in the wheel, or moves it, so it expires ttl after now. The caller
+     * holds the cart's lock.
+     * @param cart - Cart that was changed
+     * @param now - Current time in milliseconds
+     */
+    public synchronized void touch(Cart cart, long now) {
+        unlink(cart);
+        cart.deadline = now + ttlMillis;
+        cart.accountedLines = cart.lineCount();
+        lines += cart.accountedLines;
+        carts++;
+        schedule(cart, currentTick + 1);    // This tick's slot was already handled
+    }
+
+    /**
+     * Takes a cart out of the wheel, e.g. when it was emptied. The caller holds the cart's lock.
+     * @param cart - Cart to be taken out
+     */
+    public synchronized void remove(Cart cart) {
+        unlink(cart);
+    }
+
+    /**
+     * @return carts - Number of carts in the wheel
+     */
+    public synchronized int size() {
+        return carts;
+    }
+
+    /**
+     * @return lines - Number of cart lines held by the carts in the wheel
+     */
+    public synchronized long lines() {
+        return lines;
+    }
+
+    /**
+     * Advances the wheel to now and releases the carts that expired, then the oldest
+     * carts until the lines left fit the budget. It is called after every change to a
+     * cart, so when the tick has not moved on and the carts fit the budget it returns
+     * without taking the lock or allocating.
+     * @param now - Current time in milliseconds
+     * @return released - Number of carts released
+     */
+    public int expire(long now) {
+        if (now / tickMillis <= currentTick && lines <= maxLines) {
+            return 0;   // Nothing can have come due since the last call
+        }
+        ArrayList<Cart> due = new ArrayList<Cart>();
+        synchronized (this) {
+            advance(now / tickMillis, due);
+            while (lines > maxLines) {
+                Cart oldest = oldest();
+                unlink(oldest);
+                due.add(oldest);
+            }
+        }
+        int released = 0;
+        for (Cart cart : due) {
+            synchronized (cart) {
+                if (cart.wheelLevel < 0 && !cart.isReleased()) {  // Not touched again since it was taken out
+                    cart.release();
+                    released++;
+                }
+            }
+        }
+        return released;
+    }
+
+    /**
+     * Moves the wheel forward tick by tick, cascading higher levels as their slots come
+     * within range and collecting the carts of each level 0 slot that comes due.
+     */
+    private void advance(long targetTick, ArrayList<Cart> due) {
+        if (carts == 0) {
+            currentTick = Math.max(currentTick, targetTick);
+            return;
+        }
+        while (currentTick < targetTick) {
+            currentTick++;
+            int level = 0;      // Highest level whose slot starts at this tick
+            while (level < LEVELS - 1 && (currentTick & ((1L << (SLOT_BITS * (level + 1))) - 1)) == 0) {
+                level++;
+            }
+            for (; level > 0; level--) {
+                int slot = (int) (currentTick >>> (SLOT_BITS * level)) & (SLOTS - 1);
+                Cart cart = slots[level][slot];
+                slots[level][slot] = null;
+                tails[level][slot] = null;
+                while (cart != null) {
+                    Cart next = cart.wheelNext;
+                    schedule(cart, currentTick);    // Level 0's slot for this tick is handled next
+                    cart = next;
+                }
+            }
+            int slot = (int) currentTick & (SLOTS - 1);
+            Cart cart = slots[0][slot];
+            slots[0][slot] = null;
+            tails[0][slot] = null;
+            while (cart != null) {
+                Cart next = cart.wheelNext;
+                if (tickOf(cart.deadline) > currentTick) {
+                    schedule(cart, currentTick + 1);     // Was further off than the wheel reaches
+                } else {
+                    cart.wheelLevel = -1;
+                    cart.wheelNext = null;
+                    cart.wheelPrev = null;
+                    carts--;
+                    lines -= cart.accountedLines;
+                    cart.accountedLines = 0;
+                    due.add(cart);
+                }
+                cart = next;
+            }
+            if (carts == 0) {
+                currentTick = targetTick;
+            }
+        }
+    }
+
+    /**
+     * Puts a cart that is not in any slot into the slot its deadline falls in, or the
+     * earliest slot still to be handled if that has passed.
+     */
+    private void schedule(Cart cart, long earliest) {
+        long tick = tickOf(cart.deadline);
+        if (tick < earliest) {
+            tick = earliest;
+        } else if (tick - currentTick >= SPAN) {
+            tick = currentTick + SPAN - 1;
+        }
+        long delta = tick - currentTick;
+        int level = 0;
+        while (delta >= 1L << (SLOT_BITS * (level + 1))) {
+            level++;
+        }
+        int slot = (int) (tick >>> (SLOT_BITS * level)) & (SLOTS - 1);
+        Cart tail = tails[level][slot];
+        cart.wheelLevel = level;
+        cart.wheelSlot = slot;
+        cart.wheelPrev = tail;
+        cart.wheelNext = null;
+        if (tail != null) {
+            tail.wheelNext = cart;
+        } else {
+            slots[level][slot] = cart;
+        }
+        tails[level][slot] = cart;
+    }
+
+    /**
+     * Takes a cart out of its slot, if it is in one.
+     */
+    private void unlink(Cart cart) {
+        if (cart.wheelLevel < 0) {
+            return;
+        }
+        if (cart.wheelPrev != null) {
+            cart.wheelPrev.wheelNext = cart.wheelNext;
+        } else {
+            slots[cart.wheelLevel][cart.wheelSlot] = cart.wheelNext;
+        }
+        if (cart.wheelNext != null) {
+            cart.wheelNext.wheelPrev = cart.wheelPrev;
+        } else {
+            tails[cart.wheelLevel][cart.wheelSlot] = cart.wheelPrev;
+        }
+        cart.wheelLevel = -1;
+        cart.wheelNext = null;
+        cart.wheelPrev = null;
+        carts--;
+        lines -= cart.accountedLines;
+        cart.accountedLines = 0;
+    }
+
+    /**
+     * Finds the first cart of the first non-empty slot, looking at the slots in the order
+     * they come due. A slot's carts are in the order they were added to it, which is
+     * nearly but not exactly deadline order once carts were cascaded into it, so this is
+     * one of the oldest carts rather than always the oldest.
+     */
+    private Cart oldest() {
+        for (int level = 0; level < LEVELS; level++) {
+            int current = (int) (currentTick >>> (SLOT_BITS * level)) & (SLOTS - 1);
+            for (int i = 1; i <= SLOTS; i++) {
+                Cart cart = slots[level][(current + i) & (SLOTS - 1)];
+                if (cart != null) {
+                    return cart;
+                }
+            }
+        }
+        throw new IllegalStateException("Cart wheel holds lines but no carts");
+    }
+
+    private long tickOf(long millis) {
+        return Math.floorDiv(millis + tickMillis - 1, tickMillis);
+    }
+}
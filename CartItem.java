@@ -1,10 +1,17 @@
 /**
- * class CartItem defines a item for a user's cart with a given product and
- * its format (productOptions).
+ * class CartItem defines a item for a user's cart with a given product,
+ * its format (productOptions) and how many of it the customer wants.
+ *
+ * The format is stored as the product's variant slot (see Product.variantOf()),
+ * parsed once when the item is created, rather than as the options string.
  */
 public class CartItem {
-    private String productOptions;
+    private int variant;
     private Product product;
+    int quantity;
+    CartItem previous;      // Lines in the order they were added, kept by Cart
+    CartItem next;
+    CartItem nextOfProduct; // The same product's next line, kept by Cart
 
     /**
      * Constructs a CartItem object.
@@ -12,8 +19,31 @@ public class CartItem {
      * @param product - Product object that customer has added into their cart
      */
     public CartItem(String productOptions, Product product) {
-        this.productOptions = productOptions;
+        this(product, product.variantOf(productOptions));
+    }
+
+    /**
+     * Constructs a CartItem object from options that have already been parsed.
+     * @param product - Product object that customer has added into their cart
+     * @param variant - Variant slot of the format, as returned by product.variantOf()
+     */
+    public CartItem(Product product, int variant) {
+        this(product, variant, 1);
+    }
+
+    /**
+     * Constructs a CartItem object for several units.
+     * @param product - Product object that customer has added into their cart
+     * @param variant - Variant slot of the format, as returned by product.variantOf()
+     * @param quantity - Number of units
+     */
+    public CartItem(Product product, int variant, int quantity) {
+        if (variant < 0) {
+            throw new InvalidProductOptionException("Invalid options for Product " + product.getId());
+        }
         this.product = product;
+        this.variant = variant;
+        this.quantity = quantity;
     }
     /**
      * @return product - Product object customer has in their cart.
@@ -26,7 +56,21 @@ public class CartItem {
      * @return productOptions - Format of product
      */
     public String getProductOptions() {
-        return productOptions;
+        return product.optionsOf(variant);
+    }
+
+    /**
+     * @return variant - Variant slot of the product's format
+     */
+    public int getVariant() {
+        return variant;
+    }
+
+    /**
+     * @return quantity - Number of units of the product in this format
+     */
+    public int getQuantity() {
+        return quantity;
     }
 
     /**
@@ -36,4 +80,13 @@ public class CartItem {
 	{
 		product.print();
 	}
+
+    /**
+     * Renders the same information as print() into a Renderer
+     * @param out - Renderer the row is appended to
+     */
+    public void render(Renderer out)
+	{
+		product.render(out);
+	}
 }
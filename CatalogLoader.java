@@ -0,0 +1,281 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.stream.IntStream;
+
+/**
+ * class CatalogLoader reads a catalog file in the products.txt format.
+ *
+ * Each record starts with a category line. A BOOKS record is followed by the name,
+ * the price, the paperback and hardcover stock and a "title:author:year" line. Any
+ * other record is followed by the name, the price and the stock. Blank lines
+ * between records are ignored.
+ *
+ * The file is memory-mapped and cut into chunks at lines holding a category name.
+ * The chunks are parsed in parallel. A category name might also be a product name,
+ * so a cut can fall inside a record. To catch this, each chunk parses past its end
+ * to the start of the next record, and the chunks are then joined in file order.
+ * When a chunk did not really start at a record, it is parsed again from where the
+ * previous chunk stopped. The products come out in file order, so product IDs are
+ * assigned exactly as a single sequential pass would assign them.
+ */
+public class CatalogLoader {
+    private static final String[] CATEGORY_NAMES = {"COMPUTERS", "FURNITURE", "BOOKS", "CLOTHING", "GENERAL", "SHOES"};
+    private static final int MIN_CHUNK_BYTES = 1 << 20;
+
+    private int records;
+    private long elapsedNanos;
+
+    /**
+     * Loads every product in a catalog file. The products are returned in file order
+     * with a null ID; the caller assigns IDs in that order.
+     * @param file - Catalog file to load
+     * @return products - Products read from the file
+     * @throws IOException - If the file cannot be read
+     */
+    public ArrayList<Product> load(Path file) throws IOException {
+        long start = System.nanoTime();
+        ArrayList<Product> products = new ArrayList<Product>();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Catalog " + file + " is larger than 2GB");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            int length = (int) size;
+
+            // Cut the file into chunks, each starting at a line holding a category name
+            int chunks = (int) Math.max(1, Math.min(Runtime.getRuntime().availableProcessors() * 4L, size / MIN_CHUNK_BYTES));
+            int[] starts = new int[chunks + 1];
+            for (int i = 1; i < chunks; i++) {
+                starts[i] = Math.max(starts[i - 1], nextCategoryLine(buffer, (int) (size * i / chunks), length));
+            }
+            starts[chunks] = length;
+
+            Chunk[] parsed = IntStream.range(0, chunks).parallel()
+                    .mapToObj(i -> parseChunk(buffer, starts[i], starts[i + 1], length))
+                    .toArray(Chunk[]::new);
+
+            // Join the chunks in file order. A chunk whose first record was not really
+            // a record start is parsed again from where the chunk before it stopped.
+            int position = parsed[0].start;     // The first chunk always starts at a record
+            if (position < 0) {
+                parsed[0] = new Parser(buffer, 0, length).parseUntil(starts[1]);  // Reports the format error
+                position = parsed[0].start;
+            }
+            for (int i = 0; i < chunks; i++) {
+                Chunk chunk = parsed[i];
+                if (chunk.start != position) {
+                    chunk = new Parser(buffer, position, length).parseUntil(Math.max(position, starts[i + 1]));
+                }
+                products.addAll(chunk.products);
+                position = chunk.end;
+            }
+        }
+        records = products.size();
+        elapsedNanos = System.nanoTime() - start;
+        return products;
+    }
+
+    /**
+     * @return records - Number of products read by the last call to load()
+     */
+    public int getRecords() {
+        return records;
+    }
+
+    /**
+     * @return recordsPerSecond - Loading speed of the last call to load()
+     */
+    public double getRecordsPerSecond() {
+        return elapsedNanos == 0 ? 0.0 : records * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * Parses one chunk. A chunk that does not parse is not an error yet: its cut may
+     * have fallen inside a record, so it is reported with start -1 and parsed again
+     * while the chunks are joined.
+     */
+    private static Chunk parseChunk(MappedByteBuffer buffer, int start, int limit, int length) {
+        try {
+            return new Parser(buffer, start, length).parseUntil(limit);
+        } catch (IllegalArgumentException e) {
+            Chunk failed = new Chunk();
+            failed.start = -1;
+            return failed;
+        }
+    }
+
+    /**
+     * Finds the first line at or after from (starting a new line) that holds only a category name.
+     * @return position - Start of that line, or length if there is none
+     */
+    private static int nextCategoryLine(MappedByteBuffer buffer, int from, int length) {
+        int pos = from;
+        if (pos > 0 && buffer.get(pos - 1) != '\n') {  // Move to the start of the next line
+            while (pos < length && buffer.get(pos) != '\n') {
+                pos++;
+            }
+            pos++;
+        }
+        while (pos < length) {
+            int end = pos;
+            while (end < length && buffer.get(end) != '\n') {
+                end++;
+            }
+            if (isCategoryName(buffer, pos, end)) {
+                return pos;
+            }
+            pos = end + 1;
+        }
+        return length;
+    }
+
+    /**
+     * @return boolean - True if bytes [start, end) hold a category name, ignoring surrounding whitespace
+     */
+    private static boolean isCategoryName(MappedByteBuffer buffer, int start, int end) {
+        while (start < end && buffer.get(start) <= ' ') {
+            start++;
+        }
+        while (end > start && buffer.get(end - 1) <= ' ') {
+            end--;
+        }
+        for (String name : CATEGORY_NAMES) {
+            if (name.length() == end - start) {
+                int i = 0;
+                while (i < name.length() && buffer.get(start + i) == name.charAt(i)) {
+                    i++;
+                }
+                if (i == name.length()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Products parsed from one chunk, with the position of the first record and of the
+     * first record after the chunk.
+     */
+    private static class Chunk {
+        int start;
+        int end;
+        ArrayList<Product> products = new ArrayList<Product>();
+    }
+
+    /**
+     * Reads tokens and lines from the mapped file, following the same rules as
+     * java.util.Scanner's next() and nextLine().
+     */
+    private static class Parser {
+        private final MappedByteBuffer buffer;
+        private final int length;
+        private int pos;
+        private byte[] scratch = new byte[128];
+
+        Parser(MappedByteBuffer buffer, int start, int length) {
+            this.buffer = buffer;
+            this.pos = start;
+            this.length = length;
+        }
+
+        /**
+         * Parses records until one would start at or after limit.
+         */
+        Chunk parseUntil(int limit) {
+            Chunk chunk = new Chunk();
+            skipWhitespace();
+            chunk.start = pos;
+            while (pos < limit) {
+                Product p = parseRecord();
+                if (p != null) {
+                    chunk.products.add(p);
+                }
+                skipWhitespace();
+            }
+            chunk.end = pos;
+            return chunk;
+        }
+
+        private Product parseRecord() {
+            int recordStart = pos;
+            String category = nextToken();
+            try {
+                if (category.equals("BOOKS")) {
+                    String name = nextToken();
+                    double price = Double.parseDouble(nextToken());
+                    int paperbackStock = Integer.parseInt(nextToken());
+                    int hardcoverStock = Integer.parseInt(nextToken());
+                    nextLine(); // bypasses rest of line
+                    String[] titleAuthorYear = nextLine().split(":"); // Uses : to split the title, author, year
+                    return new Book(name, null, price, paperbackStock, hardcoverStock, titleAuthorYear[0], titleAuthorYear[1],
+                            Integer.parseInt(titleAuthorYear[2]));
+                }
+                nextLine(); // bypass rest of line
+                String name = nextLine().trim();
+                double price = Double.parseDouble(nextToken());
+                int stock = Integer.parseInt(nextToken());
+                if (category.equals("COMPUTERS")) {
+                    return new Product(name, null, price, stock, Product.Category.COMPUTERS, 0.0);
+                } else if (category.equals("FURNITURE")) {
+                    return new Product(name, null, price, stock, Product.Category.FURNITURE, 0.0);
+                } else if (category.equals("CLOTHING")) {
+                    return new Product(name, null, price, stock, Product.Category.CLOTHING, 0.0);
+                } else if (category.equals("GENERAL")) {
+                    return new Product(name, null, price, stock, Product.Category.GENERAL, 0.0);
+                }
+                return null;    // Unknown categories are skipped
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Malformed " + category + " record at byte " + recordStart, e);
+            }
+        }
+
+        private void skipWhitespace() {
+            while (pos < length && Character.isWhitespace(buffer.get(pos))) {
+                pos++;
+            }
+        }
+
+        private String nextToken() {
+            skipWhitespace();
+            int start = pos;
+            while (pos < length && !Character.isWhitespace(buffer.get(pos))) {
+                pos++;
+            }
+            if (start == pos) {
+                throw new IllegalArgumentException("Unexpected end of catalog");
+            }
+            return decode(start, pos);
+        }
+
+        private String nextLine() {
+            int start = pos;
+            while (pos < length && buffer.get(pos) != '\n') {
+                pos++;
+            }
+            int end = pos;
+            if (pos < length) {
+                pos++;  // Consumes the line separator
+            }
+            if (end > start && buffer.get(end - 1) == '\r') {
+                end--;
+            }
+            return decode(start, end);
+        }
+
+        private String decode(int start, int end) {
+            int n = end - start;
+            if (n > scratch.length) {
+                scratch = new byte[Math.max(n, scratch.length * 2)];
+            }
+            buffer.get(start, scratch, 0, n);
+            return new String(scratch, 0, n, StandardCharsets.UTF_8);
+        }
+    }
+}
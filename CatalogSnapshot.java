@@ -0,0 +1,173 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Map;
+
+/**
+ * class CatalogSnapshot saves a loaded catalog in a compact binary form so the next
+ * start can skip parsing the text catalog.
+ *
+ * The snapshot records the size and modification time of the text catalog it was
+ * built from. It is only used while both still match; otherwise it is stale and
+ * the caller falls back to the text parser (and writes a fresh snapshot).
+ *
+ * Layout (big-endian): a header of magic, version, source size, source modification
+ * time and product count, followed by one record per product: kind (product or
+ * book), category, ID, price, per-variant stock, the five rating counts and the
+ * name, plus title, author and year for books. Strings are a length and UTF-8 bytes.
+ *
+ * Loading is lazy at the catalog level only: ECommerceSystem reads the snapshot the
+ * first time the catalog is needed, not in its constructor. The snapshot is then
+ * decoded into Product objects all at once rather than per product or category on
+ * first access, because the catalog builds its category, author, rating and sorted
+ * indexes from every product as it is loaded.
+ */
+public class CatalogSnapshot {
+    private static final int MAGIC = 0x45435331;    // "ECS1"
+    private static final int VERSION = 1;
+    private static final byte KIND_PRODUCT = 0;
+    private static final byte KIND_BOOK = 1;
+
+    /**
+     * @param catalogFile - Path of a text catalog
+     * @return snapshot - Path of the snapshot kept for that catalog
+     */
+    public static Path snapshotFor(Path catalogFile) {
+        return catalogFile.resolveSibling(catalogFile.getFileName() + ".snapshot");
+    }
+
+    /**
+     * Reads a snapshot by memory-mapping it.
+     * @param snapshot - Snapshot file
+     * @param source - Text catalog the snapshot must have been built from
+     * @return products - Products in the snapshot, in ID order, or null if the snapshot is missing, stale or unreadable
+     */
+    public static ArrayList<Product> read(Path snapshot, Path source) {
+        if (!Files.exists(snapshot) || !Files.exists(source)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (in.getInt() != MAGIC || in.getInt() != VERSION
+                    || in.getLong() != Files.size(source) || in.getLong() != Files.getLastModifiedTime(source).toMillis()) {
+                return null;    // Not a snapshot, or built from a different catalog
+            }
+            int count = in.getInt();
+            ArrayList<Product> products = new ArrayList<Product>(count);
+            Product.Category[] categories = Product.Category.values();
+            for (int i = 0; i < count; i++) {
+                byte kind = in.get();
+                Product.Category category = categories[in.get()];
+                String id = Integer.toString(in.getInt());
+                double price = in.getDouble();
+                int[] stock = new int[in.get()];
+                for (int v = 0; v < stock.length; v++) {
+                    stock[v] = in.getInt();
+                }
+                int[] ratings = new int[5];
+                for (int r = 0; r < ratings.length; r++) {
+                    ratings[r] = in.getInt();
+                }
+                String name = readString(in);
+                Product p;
+                if (kind == KIND_BOOK) {
+                    String title = readString(in);
+                    String author = readString(in);
+                    p = new Book(name, id, price, 0, 0, title, author, in.getInt());
+                } else {
+                    p = new Product(name, id, price, 0, category, 0.0);
+                }
+                if (p.getStock().variants() != stock.length) {
+                    return null;
+                }
+                for (int v = 0; v < stock.length; v++) {
+                    p.getStock().set(v, stock[v]);
+                }
+                for (int r = 0; r < ratings.length; r++) {
+                    p.setRatingCount(r + 1, ratings[r]);
+                }
+                products.add(p);
+            }
+            return products;
+        } catch (IOException | BufferUnderflowException | IndexOutOfBoundsException e) {
+            return null;    // Unreadable snapshots are treated like missing ones
+        }
+    }
+
+    /**
+     * Writes a snapshot of the given products. The snapshot is written to a temporary
+     * file and then moved into place, so a reader never sees a half-written snapshot.
+     * @param snapshot - Snapshot file to write
+     * @param source - Text catalog the products were loaded from
+     * @param products - Products to save
+     * @return boolean - True if the snapshot was written, false if some product cannot be saved
+     * @throws IOException - If the snapshot cannot be written
+     */
+    public static boolean write(Path snapshot, Path source, Iterable<Product> products) throws IOException {
+        ArrayList<Product> list = new ArrayList<Product>();
+        for (Product p : products) {
+            if (p.getClass() != Product.class && p.getClass() != Book.class) {
+                return false;   // Only plain products and books come from a text catalog
+            }
+            list.add(p);
+        }
+        Path temp = snapshot.resolveSibling(snapshot.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(Files.size(source));
+            out.writeLong(Files.getLastModifiedTime(source).toMillis());
+            out.writeInt(list.size());
+            for (Product p : list) {
+                out.writeByte(p instanceof Book ? KIND_BOOK : KIND_PRODUCT);
+                out.writeByte(p.getCategory().ordinal());
+                out.writeInt(Integer.parseInt(p.getId()));
+                out.writeDouble(p.getPrice());
+                int variants = p.getStock().variants();
+                out.writeByte(variants);
+                for (int v = 0; v < variants; v++) {
+                    out.writeInt(p.getVariantStock(v));
+                }
+                Map<Integer, Integer> ratings = p.getRatings();
+                for (int r = 1; r <= 5; r++) {
+                    Integer count = ratings.get(r);
+                    out.writeInt(count == null ? 0 : count);
+                }
+                writeString(out, p.getName());
+                if (p instanceof Book) {
+                    Book b = (Book) p;
+                    writeString(out, b.getTitle());
+                    writeString(out, b.getAuthor());
+                    out.writeInt(b.getYear());
+                }
+            }
+        }
+        Files.move(temp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return true;
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(MappedByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0 || length > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
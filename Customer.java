@@ -1,7 +1,8 @@
 /**
  *  class Customer defines a registered customer. It keeps track of the customer's name and address. 
  *  A unique id is generated when when a new customer is created. 
- *  A cart for the customer is generated to store all their products.
+ *  A cart for the customer is created when they first add a product, to store all their products,
+ *  and dropped again when it is emptied or expires, so idle customers hold no cart.
  *  
  *  Implements the Comparable interface and compares two customers based on name
  */
@@ -34,14 +35,31 @@ public class Customer implements Comparable<Customer>
 		this.id = id;
 		this.name = name;
 		this.shippingAddress = address;
-		this.cart = new Cart();
 	}
 	/**
-	 * @return cart - Customer's cart (object)
+	 * @return cart - Customer's cart (object), created if they have none
 	 */
-	public Cart getCart() {
+	public synchronized Cart getCart() {
+		if (cart == null || cart.isReleased()) {
+			cart = new Cart(this);
+		}
 		return cart;
 	}
+	/**
+	 * @return cart - Customer's cart (object), or null if they have none
+	 */
+	public synchronized Cart peekCart() {
+		return cart == null || cart.isReleased() ? null : cart;
+	}
+	/**
+	 * Drops the customer's cart, if it is still the given one.
+	 * @param released - The cart that was released
+	 */
+	synchronized void releaseCart(Cart released) {
+		if (cart == released) {
+			cart = null;
+		}
+	}
 	/**
 	 * @return id - Customer's id
 	 */
@@ -94,6 +112,15 @@ public class Customer implements Comparable<Customer>
 	{
 		System.out.printf("\nName: %-20s ID: %3s Address: %-35s", name, id, shippingAddress);
 	}
+
+	/**
+	 * Renders the same information as print() into a Renderer, for listings of many customers.
+	 * @param out - Renderer the row is appended to
+	 */
+	public void render(Renderer out)
+	{
+		out.text("\nName: ").left(name, 20).text(" ID: ").right(id, 3).text(" Address: ").left(shippingAddress, 35);
+	}
 	
 	/**
 	 * Checks if two customers are the same based on their ID
@@ -0,0 +1,76 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * class CustomerRegistry keeps track of every registered customer.
+ *
+ * Customers are indexed by their ID in a hash map so that looking a customer up
+ * does not depend on how many customers are registered. A list is kept alongside
+ * the index so customers can still be printed (and sorted) in a stable order.
+ *
+ * The registry is safe to share between threads: lookups go straight to a
+ * concurrent hash map and never block, while changes to the list are synchronized.
+ */
+public class CustomerRegistry {
+    private Map<String, Customer> byId;
+    private ArrayList<Customer> customers;
+
+    /**
+     * Constructs an empty customer registry.
+     */
+    public CustomerRegistry() {
+        byId = new ConcurrentHashMap<String, Customer>();
+        customers = new ArrayList<Customer>();
+    }
+
+    /**
+     * Registers a customer. The customer's ID must not already be registered.
+     * @param customer - Customer to be registered
+     */
+    public synchronized void add(Customer customer) {
+        if (byId.putIfAbsent(customer.getId(), customer) != null) {
+            throw new IllegalArgumentException("Customer " + customer.getId() + " already registered");
+        }
+        customers.add(customer);
+    }
+
+    /**
+     * Finds the customer with the given ID.
+     * @param customerId - ID of the customer to be found
+     * @return customer - The customer, or null if no customer has that ID
+     */
+    public Customer find(String customerId) {
+        return byId.get(customerId);
+    }
+
+    /**
+     * @param customerId - ID of a customer
+     * @return boolean - True if a customer with that ID is registered, else false.
+     */
+    public boolean contains(String customerId) {
+        return byId.containsKey(customerId);
+    }
+
+    /**
+     * @return size - Number of registered customers
+     */
+    public int size() {
+        return byId.size();
+    }
+
+    /**
+     * @return customers - Copy of the list of registered customers, in registration order (or name order once sorted)
+     */
+    public synchronized ArrayList<Customer> getCustomerList() {
+        return new ArrayList<Customer>(customers);
+    }
+
+    /**
+     * Sorts the customer list alphabetically by name. The ID index is unaffected.
+     */
+    public synchronized void sortByName() {
+        Collections.sort(customers);
+    }
+}
@@ -0,0 +1,367 @@
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.Consumer;
+
+/**
+ * Simple timing harness for the ECommerceSystem hot paths.
+ *
+ * Run with the name of a benchmark (or no arguments to run all of them), e.g.
+ *     java ECommerceBenchmark customers
+ * (customers, loader, startup, rendering or journal).
+ *
+ * Each benchmark builds its own ECommerceSystem, warms it up and then prints the
+ * average cost of the operation being measured.
+ *
+ * The hot paths are also measured by the JMH benchmarks in src/jmh/java, against
+ * catalogs generated by writeCatalog() (see pom.xml for how to run them).
+ */
+public class ECommerceBenchmark
+{
+	private static final int WARMUP_ORDERS = 20000;
+	private static final int MEASURED_ORDERS = 200000;
+
+	public static void main(String[] args)
+	{
+		String which = args.length > 0 ? args[0] : "all";
+
+		if (which.equals("all") || which.equals("customers"))
+			customerScaling();
+		if (which.equals("all") || which.equals("loader"))
+			catalogLoading();
+		if (which.equals("all") || which.equals("startup"))
+			snapshotStartup();
+		if (which.equals("all") || which.equals("rendering"))
+			rendering();
+		if (which.equals("all") || which.equals("journal"))
+			journalRecovery();
+	}
+
+	/**
+	 * Measures orderProduct latency while the number of registered customers grows.
+	 * Customer lookup is a hash probe, so the latency should stay flat.
+	 */
+	static void customerScaling()
+	{
+		System.out.println("orderProduct latency by registered customer count");
+		int[] customerCounts = {1000, 10000, 100000, 1000000, 2000000};
+		for (int count : customerCounts) {
+			ECommerceSystem system = new ECommerceSystem();
+			String[] customerIds = new String[count];
+			for (int i = 0; i < count; i++) {
+				customerIds[i] = system.createCustomer("Customer " + i, i + " Benchmark Road");
+			}
+			String productId = system.createProduct("Benchmark Widget", Product.Category.GENERAL, 1.0, Integer.MAX_VALUE);
+
+			Random random = new Random(42);
+			for (int i = 0; i < WARMUP_ORDERS; i++) {
+				system.orderProduct(productId, customerIds[random.nextInt(count)], null);
+			}
+			long start = System.nanoTime();
+			for (int i = 0; i < MEASURED_ORDERS; i++) {
+				system.orderProduct(productId, customerIds[random.nextInt(count)], null);
+			}
+			long elapsed = System.nanoTime() - start;
+			System.out.printf("  customers: %9d   ns/order: %8.1f%n", count, (double) elapsed / MEASURED_ORDERS);
+		}
+	}
+
+	/**
+	 * Generates catalogs of growing size and reports how fast CatalogLoader reads them.
+	 */
+	static void catalogLoading()
+	{
+		System.out.println("catalog loading speed");
+		int[] productCounts = {10000, 100000, 1000000, 3000000};
+		for (int count : productCounts) {
+			try {
+				Path file = Files.createTempFile("catalog", ".txt");
+				try {
+					writeCatalog(file, count, 42);
+					CatalogLoader loader = new CatalogLoader();
+					loader.load(file);  // Warm up
+					loader.load(file);
+					System.out.printf("  products: %9d   records/s: %12.0f%n", loader.getRecords(), loader.getRecordsPerSecond());
+				} finally {
+					Files.deleteIfExists(file);
+				}
+			} catch (IOException e) {
+				System.out.println("  could not generate catalog: " + e.getMessage());
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Compares the time to the first product lookup when the catalog comes from the text
+	 * parser (which also writes the snapshot) and when it comes from the binary snapshot.
+	 */
+	static void snapshotStartup()
+	{
+		System.out.println("time to first product lookup");
+		int[] productCounts = {100000, 1000000};
+		for (int count : productCounts) {
+			try {
+				Path file = Files.createTempFile("catalog", ".txt");
+				Path snapshot = CatalogSnapshot.snapshotFor(file);
+				try {
+					writeCatalog(file, count, 42);
+					long start = System.nanoTime();
+					new ECommerceSystem(file.toString()).findProduct("700");
+					long text = System.nanoTime() - start;
+					start = System.nanoTime();
+					new ECommerceSystem(file.toString()).findProduct("700");
+					long binary = System.nanoTime() - start;
+					System.out.printf("  products: %9d   text: %8.1f ms   snapshot: %8.1f ms%n", count, text / 1e6, binary / 1e6);
+				} finally {
+					Files.deleteIfExists(file);
+					Files.deleteIfExists(snapshot);
+				}
+			} catch (IOException e) {
+				System.out.println("  could not generate catalog: " + e.getMessage());
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Compares listing a whole catalog with one printf per row (Product.print) against
+	 * rendering it through a Renderer, and checks that both produce the same text.
+	 * Also checks Renderer's %7.1f against String.format on random prices. Exits with
+	 * status 1 if any output differs.
+	 */
+	static void rendering()
+	{
+		System.out.println("listing speed, printf per row vs Renderer");
+		Random random = new Random(42);
+		for (int i = 0; i < 1000000; i++) {
+			double price = random.nextInt(4) == 0 ? random.nextDouble() * 100000 : random.nextInt(200000) / 100.0;
+			String expected = String.format("%7.1f", price);
+			String actual = renderToString(out -> out.oneDecimal(price, 7));
+			if (!expected.equals(actual)) {
+				System.out.printf("  FAIL price %s: printf \"%s\", Renderer \"%s\"%n", price, expected, actual);
+				System.exit(1);
+			}
+		}
+		int[] productCounts = {100000, 1000000};
+		for (int count : productCounts) {
+			try {
+				Path file = Files.createTempFile("catalog", ".txt");
+				Path snapshot = CatalogSnapshot.snapshotFor(file);
+				try {
+					writeCatalog(file, count, 42);
+					ECommerceSystem system = new ECommerceSystem(file.toString());
+					system.createShoes("Benchmark Shoe", 80.0, 10, "9Brown");
+					final ArrayList<Product> products = system.getProductsByPrice(0, Integer.MAX_VALUE);
+
+					Runnable printf = () -> {
+						for (Product p : products) {
+							p.print();
+						}
+					};
+					Runnable renderer = () -> {
+						Renderer out = new Renderer(System.out);
+						for (Product p : products) {
+							p.render(out);
+							out.endRow();
+						}
+						out.flush();
+					};
+					if (!Arrays.equals(capture(printf), capture(renderer))) {
+						System.out.printf("  FAIL products: %d, Renderer output differs from printf%n", count);
+						System.exit(1);
+					}
+					long printfTime = timeListing(printf);
+					long rendererTime = timeListing(renderer);
+					System.out.printf("  products: %9d   printf: %8.1f ms   Renderer: %8.1f ms%n", products.size(), printfTime / 1e6, rendererTime / 1e6);
+				} finally {
+					Files.deleteIfExists(file);
+					Files.deleteIfExists(snapshot);
+				}
+			} catch (IOException e) {
+				System.out.println("  could not generate catalog: " + e.getMessage());
+				return;
+			}
+		}
+	}
+
+	private static String renderToString(Consumer<Renderer> render)
+	{
+		StringWriter text = new StringWriter();
+		Renderer out = new Renderer(text);
+		render.accept(out);
+		out.flush();
+		return text.toString();
+	}
+
+	/**
+	 * Runs a listing with System.out sent to memory and returns what it printed.
+	 */
+	private static byte[] capture(Runnable listing)
+	{
+		PrintStream console = System.out;
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		System.setOut(new PrintStream(bytes));
+		try {
+			listing.run();
+		} finally {
+			System.setOut(console);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Runs a listing once to warm up and then times a second run, with System.out discarded.
+	 */
+	private static long timeListing(Runnable listing)
+	{
+		PrintStream console = System.out;
+		System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+		try {
+			listing.run();
+			long start = System.nanoTime();
+			listing.run();
+			return System.nanoTime() - start;
+		} finally {
+			System.setOut(console);
+		}
+	}
+
+	/**
+	 * Measures the order journal: how well concurrent ratings share disk syncs (group
+	 * commit), and how fast a journal of ten million records is replayed at startup.
+	 * The replayed system holds a few million orders, so run it with a large heap
+	 * (e.g. -Xmx6g).
+	 */
+	static void journalRecovery()
+	{
+		System.out.println("order journal");
+		try {
+			Path catalog = Files.createTempFile("catalog", ".txt");
+			Path journalFile = Files.createTempFile("journal", ".journal");
+			try {
+				writeCatalog(catalog, 1000, 42);
+
+				// Group commit: every rating is synced before rateProduct returns
+				final ECommerceSystem system = new ECommerceSystem(catalog.toString(), journalFile.toString());
+				final int threads = 16;
+				final int ratingsPerThread = 500;
+				ArrayList<Thread> workers = new ArrayList<Thread>();
+				long start = System.nanoTime();
+				for (int t = 0; t < threads; t++) {
+					final int seed = t;
+					Thread worker = new Thread(() -> {
+						Random random = new Random(seed);
+						for (int i = 0; i < ratingsPerThread; i++) {
+							system.rateProduct("" + (700 + random.nextInt(1000)), 1 + random.nextInt(5));
+						}
+					});
+					workers.add(worker);
+					worker.start();
+				}
+				for (Thread worker : workers) {
+					worker.join();
+				}
+				long elapsed = System.nanoTime() - start;
+				System.out.printf("  group commit: %d threads, %d commits, %d syncs, %.0f commits/s%n",
+						threads, threads * ratingsPerThread, system.getJournalSyncs(), threads * ratingsPerThread * 1e9 / elapsed);
+				system.closeJournal();
+
+				// Recovery: ten million records of customers, orders, shipments, cancellations and ratings
+				Files.delete(journalFile);
+				int records = 10000000;
+				writeJournal(journalFile, records, 42);
+				start = System.nanoTime();
+				ECommerceSystem recovered = new ECommerceSystem(catalog.toString(), journalFile.toString());
+				elapsed = System.nanoTime() - start;
+				recovered.closeJournal();
+				System.out.printf("  replay: %d records in %.1f ms, %.0f records/s (customer 904 has %d orders)%n",
+						records, elapsed / 1e6, records * 1e9 / elapsed, recovered.getOrderHistory("904", 0, Integer.MAX_VALUE).size());
+			} finally {
+				Files.deleteIfExists(catalog);
+				Files.deleteIfExists(CatalogSnapshot.snapshotFor(catalog));
+				Files.deleteIfExists(journalFile);
+			}
+		} catch (IOException e) {
+			System.out.println("  could not write journal: " + e.getMessage());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Writes a journal for a 1000 product catalog: one customer record for every hundred
+	 * records, and otherwise 30% orders, 10% shipments, 10% cancellations and 50% ratings.
+	 * The orders are for 1000 products created at the start of the journal with plenty of
+	 * stock, as replay rejects orders for stock that is not there.
+	 */
+	private static void writeJournal(Path file, int records, long seed) throws IOException
+	{
+		Random random = new Random(seed);
+		ArrayList<OrderJournal.Record> batch = new ArrayList<OrderJournal.Record>();
+		ArrayList<String> open = new ArrayList<String>();
+		int customers = 0;
+		int orderNumber = 500;
+		try (OrderJournal journal = new OrderJournal(file)) {
+			for (int i = 0; i < 1000; i++) {
+				batch.add(ECommerceSystem.productRecord("" + (1700 + i), "Journal Product " + i, Product.Category.GENERAL, 1.0, Integer.MAX_VALUE));
+			}
+			for (int i = 1000; i < records; i++) {
+				int kind = random.nextInt(100);
+				if (customers == 0 || i % 100 == 0) {
+					String id = "" + (904 + customers++);
+					batch.add(ECommerceSystem.customerRecord(id, "Customer " + id, id + " Journal Road"));
+				} else if (kind < 30 || open.isEmpty()) {
+					String number = "" + orderNumber++;
+					open.add(number);
+					batch.add(ECommerceSystem.orderRecord(number, "" + (904 + random.nextInt(customers)), "" + (1700 + random.nextInt(1000)), 0));
+				} else if (kind < 50) {
+					int pick = random.nextInt(open.size());
+					String number = open.get(pick);
+					open.set(pick, open.get(open.size() - 1));
+					open.remove(open.size() - 1);
+					batch.add(kind < 40 ? ECommerceSystem.shipRecord(number) : ECommerceSystem.cancelRecord(number));
+				} else {
+					batch.add(ECommerceSystem.rateRecord("" + (700 + random.nextInt(1000)), 1 + random.nextInt(5)));
+				}
+				if (batch.size() == 10000) {
+					journal.commit(batch);
+					batch.clear();
+				}
+			}
+			journal.commit(batch);
+		}
+	}
+
+	/**
+	 * Writes a generated catalog in the products.txt format. About one product in five is a book.
+	 * @param file - File to write
+	 * @param products - Number of products
+	 * @param seed - Seed for the random names, prices and stock counts
+	 */
+	static void writeCatalog(Path file, int products, long seed) throws IOException
+	{
+		String[] categories = {"COMPUTERS", "FURNITURE", "CLOTHING", "GENERAL"};
+		Random random = new Random(seed);
+		try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			for (int i = 0; i < products; i++) {
+				if (random.nextInt(5) == 0) {
+					out.write("BOOKS\nBook\n" + (5 + random.nextInt(60)) + ".0\n" + random.nextInt(20) + " " + random.nextInt(10) + "\n");
+					out.write("Title " + i + ":Author " + random.nextInt(Math.max(1, products / 10)) + ":" + (1900 + random.nextInt(125)) + "\n");
+				} else {
+					out.write(categories[random.nextInt(categories.length)] + "\nProduct " + i + "\n");
+					out.write((1 + random.nextInt(2000)) + "." + random.nextInt(10) + "\n" + random.nextInt(500) + "\n\n");
+				}
+			}
+		}
+	}
+}
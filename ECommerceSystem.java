@@ -1,32 +1,59 @@
-import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Collection;
 import java.util.Comparator;
 import java.util.Map;
 import java.util.Random;
-import java.util.Scanner;
-import java.util.TreeMap;
 
 /**
  * Models a simple ECommerce system. Keeps track of products for sale,
  * registered customers, product orders and
  * orders that have been shipped to a customer
+ *
+ * The system may be shared by several threads. Stock is reserved with a
+ * compare-and-set on the product's per-variant StockCounter, so orders never
+ * block one another and stock is never oversold.
  */
 public class ECommerceSystem {
-  private Map<String, Product> prods = new TreeMap<String, Product>();
-  private Map<String, Integer> orderStats = new TreeMap<String, Integer>();
-  private ArrayList<Product> products = new ArrayList<Product>();
-  private ArrayList<Customer> customers = new ArrayList<Customer>();
-
-  private ArrayList<ProductOrder> orders = new ArrayList<ProductOrder>();
-  private ArrayList<ProductOrder> shippedOrders = new ArrayList<ProductOrder>();
-
-  // These variables are used to generate order numbers, customer id's, product
-  // id's
-  private int orderNumber = 500;
-  private int customerId = 900;
-  private int productId = 700;
+  private volatile ProductCatalog prods;     // Loaded on first use, see catalog()
+  private final String catalogFile;
+  private OrderCounters orderCounts = new OrderCounters();
+  private BestsellerBoard bestsellers = new BestsellerBoard();   // Brought up to date from orderCounts when read
+  private RatingIndex ratingIndex = new RatingIndex();
+  private CustomerRegistry customers = new CustomerRegistry();
+
+  private OrderStore orders = new OrderStore();
+  private ShippedOrderArchive shippedOrders = new ShippedOrderArchive(id -> catalog().get(id), id -> customers.find(id));   // Off the heap, see ShippedOrderArchive
+  private CatalogLoader catalogLoader = new CatalogLoader();
+
+  // Carts untouched for a day are released, as are the oldest carts beyond a million cart lines
+  private static final long CART_TTL_MILLIS = 24L * 60 * 60 * 1000;
+  private static final long CART_TICK_MILLIS = 1000;
+  private static final int CART_MAX_LINES = 1_000_000;
+  private CartExpiry cartExpiry = new CartExpiry(CART_TTL_MILLIS, CART_TICK_MILLIS, CART_MAX_LINES, System.currentTimeMillis());
+
+  // These allocators are used to generate order numbers, customer id's, product
+  // id's. Product id's index the catalog's array, so they are expected to stay within an int
+  private static final int FIRST_PRODUCT_ID = 700;
+  private IdAllocator orderNumbers = new IdAllocator(500);
+  private IdAllocator customerIds = new IdAllocator(900);
+  private IdAllocator productIds = new IdAllocator(FIRST_PRODUCT_ID);
+
+  // Journal of changes, replayed at startup; null when the system keeps its state in memory only
+  private OrderJournal journal;
+  private static final int JOURNAL_CUSTOMER = 1;
+  private static final int JOURNAL_PRODUCT = 2;
+  private static final int JOURNAL_SHOES = 3;
+  private static final int JOURNAL_ORDER = 4;
+  private static final int JOURNAL_SHIP = 5;
+  private static final int JOURNAL_CANCEL = 6;
+  private static final int JOURNAL_RATE = 7;
+  private static final int JOURNAL_PRICE = 8;
+  private static final int JOURNAL_NAME = 9;
 
   // General variable used to store an error message when something is invalid
   // (e.g. customer id does not exist)
@@ -36,9 +63,18 @@ public class ECommerceSystem {
   Random random = new Random();
 
   public ECommerceSystem() {
+    this("products.txt");
+  }
 
-    // Create some products. Notice how generateProductId() method is used
-    addProds();
+  /**
+   * Constructs a system whose products are loaded from the given catalog file
+   * @param catalogFile - Path of a catalog in the products.txt format
+   */
+  public ECommerceSystem(String catalogFile) {
+    this.catalogFile = catalogFile;
+
+    // Products are not loaded here: the catalog is loaded the first time it is used (see catalog()),
+    // so the system is ready for commands that do not need it straight away.
 
     // Create some customers. Notice how generateCustomerId() method is used
     customers.add(new Customer(generateCustomerId(), "Inigo Montoya", "1 SwordMaker Lane, Florin"));
@@ -48,61 +84,261 @@ public class ECommerceSystem {
 
     
   }
-  // Adds all products in products.txt to a map whichs maps the productId, to a product.
-  private void addProds() {
-    File input = new File("products.txt");
+
+  /**
+   * Constructs a system that records every change (new customers and products, orders,
+   * shipments, cancellations, ratings, price and name changes) in a journal file. The
+   * journal is replayed first, so the system starts in the state it was left in. A change
+   * is written to the journal before it takes effect, and a call that changes state only
+   * returns once its journal record is on disk.
+   * @param catalogFile - Path of a catalog in the products.txt format
+   * @param journalFile - Path of the journal, created if it does not exist
+   * @throws JournalMismatchException - If the journal does not fit the catalog, e.g. after the catalog was edited
+   */
+  public ECommerceSystem(String catalogFile, String journalFile) {
+    this(catalogFile);
+    OrderJournal j = null;
     try {
-      Scanner in = new Scanner(input);
-      while (in.hasNextLine()) {
-        String temp = in.next().trim();
-        if (temp.equals("BOOKS")) {
-          String name = in.next();
-          double price = in.nextDouble();
-          int paperbackStock = in.nextInt();
-          int hardcoverStock = in.nextInt();
-          in.nextLine(); // bypasses rest of line
-          String line = in.nextLine(); // Recieves title, author, year
-          String[] titleAuthorYear = line.split(":"); // Uses : to split the title, author, year into seperate index
-          String title = titleAuthorYear[0];
-          String author = titleAuthorYear[1];
-          int year = Integer.valueOf(titleAuthorYear[2]);
-          String prodId = generateProductId();
-          prods.put(prodId, new Book(name, prodId, price, paperbackStock, hardcoverStock, title, author, year));
-        } else {
-          in.nextLine(); // bypass rest of line
-          String name = in.nextLine().trim();
-          double price = in.nextDouble();
-          int stock = in.nextInt();
-          
-          // Determines the category of the product
-          if (temp.equals("COMPUTERS")) {
-            String prodId = generateProductId();
-            prods.put(prodId, new Product(name, prodId, price, stock, Product.Category.COMPUTERS, 0.0));
-          } else if (temp.equals("FURNITURE")) {
-            String prodId = generateProductId();
-            prods.put(prodId, new Product(name, prodId, price, stock, Product.Category.FURNITURE, 0.0));
-          } else if (temp.equals("CLOTHING")) {
-            String prodId = generateProductId();
-            prods.put(prodId, new Product(name, prodId, price, stock, Product.Category.CLOTHING, 0.0));
-          } else if (temp.equals("GENERAL")) {
-            String prodId = generateProductId();
-            prods.put(prodId, new Product(name, prodId, price, stock, Product.Category.GENERAL, 0.0));
-          }
+      j = new OrderJournal(Paths.get(journalFile));
+      j.replay(this::replay);
+      for (Product p : catalog()) {   // Ratings are indexed once, after all of them have been replayed
+        ratingIndex.update(p);
+      }
+      journal = j;
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not open journal " + journalFile, e);
+    } catch (JournalMismatchException e) {
+      throw new JournalMismatchException("Journal " + journalFile + " does not match catalog " + catalogFile + ": "
+          + e.getMessage() + ". Start without the journal, or move it out of the way.");
+    } finally {
+      if (journal == null && j != null) {
+        try {
+          j.close();  // Replay failed, so the journal is not used
+        } catch (IOException e) {
+          // The replay failure is the one reported
+        }
+      }
+    }
+  }
+
+  /**
+   * Closes the journal, if this system has one
+   */
+  public void closeJournal() {
+    if (journal != null) {
+      try {
+        journal.close();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  /**
+   * @return syncs - Number of times the journal has been synced to disk, 0 without a journal
+   */
+  public long getJournalSyncs() {
+    return journal == null ? 0 : journal.getSyncs();
+  }
+
+  /**
+   * Writes a change to the journal; does nothing without a journal. If this throws, nothing
+   * was written and the caller undoes whatever it did to make the change possible. Once it
+   * has returned, the record reaches the disk unless writing fails, so from then on the
+   * change is applied, even if sync() fails, as replay would apply it.
+   * @param record - The change
+   * @return ticket - Pass to sync() to wait until the change is on disk
+   */
+  private long log(OrderJournal.Record record) {
+    return journal == null ? 0 : journal.append(record);
+  }
+
+  /**
+   * Waits until logged changes are on disk; does nothing without a journal
+   * @param ticket - Returned by log()
+   */
+  private void sync(long ticket) {
+    if (journal != null) {
+      journal.sync(ticket);
+    }
+  }
+
+  // Journal records. The IDs are written out, so replay does not depend on the ID generators.
 
+  static OrderJournal.Record customerRecord(String id, String name, String address) {
+    return new OrderJournal.Record(JOURNAL_CUSTOMER).text(id).text(name).text(address);
+  }
+
+  static OrderJournal.Record productRecord(String id, String name, Product.Category category, double price, int stock) {
+    return new OrderJournal.Record(JOURNAL_PRODUCT).text(id).text(name).number(category.ordinal()).decimal(price).number(stock);
+  }
+
+  static OrderJournal.Record orderRecord(String orderNumber, String customerId, String productId, int variant) {
+    return new OrderJournal.Record(JOURNAL_ORDER).text(orderNumber).text(customerId).text(productId).number(variant);
+  }
+
+  static OrderJournal.Record shipRecord(String orderNumber) {
+    return new OrderJournal.Record(JOURNAL_SHIP).text(orderNumber);
+  }
+
+  static OrderJournal.Record cancelRecord(String orderNumber) {
+    return new OrderJournal.Record(JOURNAL_CANCEL).text(orderNumber);
+  }
+
+  static OrderJournal.Record rateRecord(String productId, int rating) {
+    return new OrderJournal.Record(JOURNAL_RATE).text(productId).number(rating);
+  }
+
+  /**
+   * @param productId - ID of a product named in the journal
+   * @return product - The product; the journal does not belong to this catalog if it is missing
+   */
+  private Product replayedProduct(String productId) {
+    Product product = catalog().get(productId);
+    if (product == null) {
+      throw new JournalMismatchException("Journal refers to product " + productId + ", which is not in " + catalogFile);
+    }
+    return product;
+  }
+
+  /**
+   * Applies one journal record to the in-memory state, without journaling it again
+   * @param r - Reader positioned on the record
+   */
+  private void replay(OrderJournal.Reader r) {
+    switch (r.type()) {
+      case JOURNAL_CUSTOMER: {
+        String id = r.text();
+        customers.add(new Customer(id, r.text(), r.text()));
+        customerIds.advancePast(IdAllocator.parse(id));
+        break;
+      }
+      case JOURNAL_PRODUCT: {
+        String id = r.text();
+        String name = r.text();
+        Product.Category category = Product.Category.values()[r.number()];
+        double price = r.decimal();
+        catalog().add(new Product(name, id, price, r.number(), category, 0.0));
+        productIds.advancePast(IdAllocator.parse(id));
+        break;
+      }
+      case JOURNAL_SHOES: {
+        String id = r.text();
+        String name = r.text();
+        double price = r.decimal();
+        int stock = r.number();
+        catalog().add(new Shoes(name, id, price, stock, r.text()));
+        productIds.advancePast(IdAllocator.parse(id));
+        break;
+      }
+      case JOURNAL_ORDER: {
+        String number = r.text();
+        Customer cust = customers.find(r.text());
+        Product product = replayedProduct(r.text());
+        int variant = r.number();
+        if (cust == null) {
+          throw new JournalMismatchException("Journal order " + number + " is for an unknown customer");
+        }
+        if (!product.tryReserveStock(variant, 1)) {
+          throw new JournalMismatchException("Journal order " + number + " is for Product " + product.getId() + " which has no stock left in " + catalogFile);
         }
+        orders.add(new ProductOrder(number, product, cust, variant));
+        orderCounts.record(product, 1);
+        orderNumbers.advancePast(IdAllocator.parse(number));
+        break;
       }
-      in.close();
-    } catch (FileNotFoundException e) {
+      case JOURNAL_SHIP: {
+        ProductOrder ord = orders.remove(r.text());
+        if (ord != null) {
+          shippedOrders.add(ord);
+        }
+        break;
+      }
+      case JOURNAL_CANCEL:
+        orders.remove(r.text());
+        break;
+      case JOURNAL_RATE:
+        replayedProduct(r.text()).setRatings(r.number());
+        break;
+      case JOURNAL_PRICE: {
+        catalog().reprice(replayedProduct(r.text()), r.decimal());
+        break;
+      }
+      case JOURNAL_NAME: {
+        catalog().rename(replayedProduct(r.text()), r.text());
+        break;
+      }
+      default:
+        throw new JournalMismatchException("Unknown journal record type " + r.type());
+    }
+  }
+
+  /**
+   * Returns the product catalog, loading it if this is the first time it is needed
+   * @return prods - The product catalog
+   */
+  private ProductCatalog catalog() {
+    ProductCatalog catalog = prods;
+    if (catalog == null) {
+      synchronized (this) {
+        catalog = prods;
+        if (catalog == null) {
+          catalog = new ProductCatalog(FIRST_PRODUCT_ID);
+          addProds(catalog);
+          prods = catalog;
+        }
+      }
+    }
+    return catalog;
+  }
+
+  // Adds all products in the catalog file to the catalog, which maps the productId to a product.
+  // A binary snapshot of the catalog is used when it is up to date; otherwise the text catalog is
+  // parsed, products get their IDs in file order, and a new snapshot is written for the next start.
+  private void addProds(ProductCatalog catalog) {
+    Path source = Paths.get(catalogFile);
+    Path snapshot = CatalogSnapshot.snapshotFor(source);
+    ArrayList<Product> saved = CatalogSnapshot.read(snapshot, source);
+    if (saved != null) {
+      for (Product p : saved) {
+        catalog.add(p);
+        ratingIndex.update(p);   // Saved products may already have ratings
+        productIds.advancePast(IdAllocator.parse(p.getId()));
+      }
+      return;
+    }
+    try {
+      for (Product p : catalogLoader.load(source)) {
+        p.setId(generateProductId());
+        catalog.add(p);
+      }
+    } catch (NoSuchFileException e) {
       System.out.println("File not found");
+      return;
+    } catch (IOException e) {
+      System.out.println("Could not read " + catalogFile + ": " + e.getMessage());
+      return;
+    }
+    try {
+      CatalogSnapshot.write(snapshot, source, catalog);
+    } catch (IOException e) {
+      // The snapshot only speeds up the next start, so the catalog is still usable without it
     }
   }
 
+  /**
+   * @return loader - Loader used for the text catalog file, which reports how fast it loaded
+   */
+  public CatalogLoader getCatalogLoader() {
+    return catalogLoader;
+  }
+
   /**
    * Generates an order number
    * @return orderNumber - Order number of product ordered
    */
   private String generateOrderNumber() {
-    return "" + orderNumber++;
+    return Long.toString(orderNumbers.next());
   }
 
   /**
@@ -110,7 +346,7 @@ public class ECommerceSystem {
    * @return customerId - ID number to represent customer
    */
   private String generateCustomerId() {
-    return "" + customerId++;
+    return Long.toString(customerIds.next());
   }
 
   /**
@@ -118,7 +354,7 @@ public class ECommerceSystem {
    * @return productId - ID number to represent a product
    */
   private String generateProductId() {
-    return "" + productId++;
+    return Long.toString(productIds.next());
   }
 
   /**
@@ -133,46 +369,60 @@ public class ECommerceSystem {
    * Prints all products
    */
   public void printAllProducts() {
-    for (String id: prods.keySet()) {
-      prods.get(id).print();
+    Renderer out = new Renderer(System.out);
+    for (Product p : catalog()) {
+      p.render(out);
+      out.endRow();
     }
+    out.flush();
   }
 
   /**
    * Print all products that are books. See getCategory() method in class Product
    */
   public void printAllBooks() {
-    for (String id: prods.keySet())
-      if (prods.get(id).getCategory() == Product.Category.BOOKS) { // Determines if product is a book
-        prods.get(id).print();
-      }
+    Renderer out = new Renderer(System.out);
+    for (Product p : catalog().productsIn(Product.Category.BOOKS)) {
+      p.render(out);
+      out.endRow();
+    }
+    out.flush();
   }
 
   /**
    * Prints all orders
    */
   public void printAllOrders() {
-    for (ProductOrder o : orders) {
-      o.print();
+    Renderer out = new Renderer(System.out);
+    for (ProductOrder o : orders.getOrders()) {
+      o.render(out);
+      out.endRow();
     }
+    out.flush();
   }
 
   /**
    * Print all shipped orders
    */
   public void printAllShippedOrders() {
-    for (ProductOrder o : shippedOrders) {
-      o.print();
-    }
+    Renderer out = new Renderer(System.out);
+    shippedOrders.forEach(o -> {   // Streams from the archive
+      o.render(out);
+      out.endRow();
+    });
+    out.flush();
   }
 
   /**
    * Print all customers
    */
   public void printCustomers() {
-    for (int i = 0; i < customers.size(); i++) {
-      customers.get(i).print();
+    Renderer out = new Renderer(System.out);
+    for (Customer c : customers.getCustomerList()) {
+      c.render(out);
+      out.endRow();
     }
+    out.flush();
   }
 
   /**
@@ -180,31 +430,66 @@ public class ECommerceSystem {
    * (if any)
    */
   public void printOrderHistory(String customerId) {
-    boolean found = false;
-    for (Customer c : customers) {
-      if (c.getId().equals(customerId)) {   // Checks if customer exists
-        found = true;
-      }
-    }
-    if (!found) {   // If customerId doesn't exist, throws custom UnknownCustomerException.
+    if (!customers.contains(customerId)) {   // If customerId doesn't exist, throws custom UnknownCustomerException.
       throw new UnknownCustomerException("Customer " + customerId + " Not Found");
     }
 
     // Print current orders of this customer
-    System.out.println("Current Orders of Customer " + customerId);
-    for (ProductOrder o : orders) {
-      if (o.getCustomer().getId().equals(customerId)) {   // Checks all orderId's that correlate to the customerId given.
-        o.print();
-      }
+    Renderer out = new Renderer(System.out);
+    out.text("Current Orders of Customer " + customerId + "\n");
+    for (ProductOrder o : orders.getOrdersOf(customerId)) {
+      o.render(out);
+      out.endRow();
     }
 
     // Print shipped orders of this customer
-    System.out.println("\nShipped Orders of Customer " + customerId);
-    for (ProductOrder o : shippedOrders) {
-      if (o.getCustomer().getId().equals(customerId)) { // Checks all shippedOrders orderId's that correlate to the customerId given.
-        o.print();
+    out.text("\nShipped Orders of Customer " + customerId + "\n");
+    shippedOrders.forEachOf(customerId, o -> {
+      o.render(out);
+      out.endRow();
+    });
+    out.flush();
+  }
+
+  /**
+   * Returns one page of a customer's order history. The history lists the customer's
+   * current orders first and then their shipped orders, each in the order they were placed.
+   * @param customerId - ID of the customer
+   * @param offset - Number of history entries to skip
+   * @param limit - Maximum number of entries to return
+   * @return page - List of at most limit orders
+   */
+  public ArrayList<ProductOrder> getOrderHistory(String customerId, int offset, int limit) {
+    if (!customers.contains(customerId)) {
+      throw new UnknownCustomerException("Customer " + customerId + " Not Found");
+    }
+    if (offset < 0 || limit < 0) {
+      throw new IllegalArgumentException("Offset and limit must not be negative");
+    }
+    ArrayList<ProductOrder> page = new ArrayList<ProductOrder>(Math.min(limit, 64));
+    offset = addPage(orders.getOrdersOf(customerId), offset, limit, page);
+    shippedOrders.addPageOf(customerId, offset, limit - page.size(), page);
+    return page;
+  }
+
+  /**
+   * Copies orders into page after skipping the first offset of them, until page holds limit orders
+   * @return offset - Number of entries still to be skipped in the next collection
+   */
+  private int addPage(Collection<ProductOrder> source, int offset, int limit, ArrayList<ProductOrder> page) {
+    if (offset >= source.size()) {  // Whole collection is before the page
+      return offset - source.size();
+    }
+    for (ProductOrder o : source) {
+      if (page.size() >= limit) {
+        break;
+      } else if (offset > 0) {
+        offset--;
+      } else {
+        page.add(o);
       }
     }
+    return 0;
   }
 
   /**
@@ -216,94 +501,147 @@ public class ECommerceSystem {
    */
   public String orderProduct(String productId, String customerId, String productOptions) {
     String orderNum = "";
-    boolean custIdExist = false;
-    Customer cust = new Customer("0");
-    for (Customer c : customers) {
-      if (c.getId().equals(customerId)) { // Checks if the customerId given exists
-        custIdExist = true;
-        cust = c;
-      }
-    }
-    if (!custIdExist) {
+    Customer cust = customers.find(customerId);
+    if (cust == null) { // Checks if the customerId given exists
       throw new UnknownCustomerException("Customer " + customerId + " Not Found");
     }
 
-    boolean prodIdExist = false;
-    Product product = new Product();
-    for (String id: prods.keySet()) {
-      if (id.equals(productId)) { // Checks if the given productId exists
-        prodIdExist = true;
-        product = prods.get(id);
-      }
-    }
-    if (!prodIdExist) { // Throws new UnknownProductException if prodId does not exist.
+    Product product = catalog().get(productId);
+    if (product == null) { // Throws new UnknownProductException if prodId does not exist.
       throw new UnknownProductException("Product " + productId + " Not Found");
     }
     
     // Check if customer used ORDER keyword to order book or shoe instead of their
     // specified keyword
     if (productOptions != (null)) {
-      for (String id: prods.keySet()) {
-        if (id.equals(productId)) {
-          if (!prods.get(id).getCategory().equals(Product.Category.BOOKS) && !prods.get(id).getCategory().equals(Product.Category.SHOES)) {
-            throw new IncorrectOrderingException("Ensure correct ordering function is being used.");
-          }
-        }
+      if (!product.getCategory().equals(Product.Category.BOOKS) && !product.getCategory().equals(Product.Category.SHOES)) {
+        throw new IncorrectOrderingException("Ensure correct ordering function is being used.");
       }
     }
-    if(productOptions == null && product.getCategory().equals(Product.Category.BOOKS) || product.getCategory().equals(Product.Category.SHOES)) {
+    // Books and shoes need options; the parentheses matter, as without them every shoe order was rejected
+    if(productOptions == null && (product.getCategory().equals(Product.Category.BOOKS) || product.getCategory().equals(Product.Category.SHOES))) {
       throw new IncorrectOrderingException("Ensure correct ordering function is being used.");
     }
 
-    if (product.getCategory().equals(Product.Category.BOOKS)) {
-      if (product.validOptions(productOptions)) {
-        if (!product.getCategory().equals(Product.Category.BOOKS)) {
-          throw new InvalidProductOptionException("ProductId " + productId + " is not a book");
-        }
-      } else {
-        throw new InvalidProductOptionException("Product Book ProductId " + productId + " Invalid Options: " + productOptions);
-      }
-
-    // Checks if the size and colour are valid
-    } else if (product.getCategory().equals(Product.Category.SHOES)) {
-      if (product.validOptions(productOptions)) {
-        if (!product.getCategory().equals(Product.Category.SHOES)) {
-          throw new InvalidProductOptionException("ProductId " + productId + " is not a shoe");
-        }
-      }else {
+    // Parses the options once; from here on only the variant slot is used.
+    // Checks if the book format or the shoe size and colour are valid
+    int variant = product.variantOf(productOptions);
+    if (variant < 0) {
+      if (product.getCategory().equals(Product.Category.SHOES)) {
         throw new InvalidProductOptionException("Product Shoe ProductId " + productId + " Invalid Options: " + productOptions);
       }
+      throw new InvalidProductOptionException("Product Book ProductId " + productId + " Invalid Options: " + productOptions);
     }
 
-    // Check if the product has stock available (i.e. not 0)
-    if (product.getStockCount(productOptions) <= 0) {
+    orderNum = placeOrder(product, cust, variant);
+    return orderNum;
+  }
+
+  /**
+   * Takes one unit of a validated product variant out of stock and records the order
+   * @param product - Product being ordered
+   * @param cust - Ordering customer
+   * @param variant - Variant slot of the options ordered, as returned by product.variantOf()
+   * @return orderNum - Generated number that identifies the order
+   */
+  private String placeOrder(Product product, Customer cust, int variant) {
+    // Check if the product has stock available (i.e. not 0) and take one. Both happen in
+    // a single atomic step so two orders cannot both take the last item
+    if (!product.tryReserveStock(variant, 1)) {
       throw new NoStockException("No Stock");
     }
 
     // Create a ProductOrder and adds to orders
     // list and return order number string
-    product.reduceStockCount(productOptions);
-    ProductOrder pO = new ProductOrder(generateOrderNumber(), product, cust, productOptions);
-    orders.add(pO);
-    orderNum = pO.getOrderNumber();
-    addOrders(productId);   // Keeping track of the product ordered
-    return orderNum;
+    ProductOrder pO = new ProductOrder(generateOrderNumber(), product, cust, variant);
+    long ticket;
+    try {
+      ticket = log(orderRecord(pO.getOrderNumber(), cust.getId(), product.getId(), variant));
+    } catch (RuntimeException e) {
+      product.releaseStock(variant, 1);   // The order was not recorded, so it does not happen
+      throw e;
+    }
+    try {
+      sync(ticket);
+    } finally {
+      orders.add(pO);
+      orderCounts.record(product, 1);   // Keeping track of the product ordered
+    }
+    return pO.getOrderNumber();
   }
 
   /**
    * Create a new Customer object and add it to the list of customers
    * @param name - The new customer's name
    * @param address - The new customer's address
+   * @return customerId - ID generated for the new customer
    */
-  public void createCustomer(String name, String address) {
+  public String createCustomer(String name, String address) {
     // Check name and address parameter to make sure it is not null or ""
     if (name == null || name == "") {
       throw new InvalidNameException("Invalid Customer Name");
     } else if (address == null || address == "") {
       throw new InvalidAddressException("Invalid Customer Address");
     }
-    // Create a Customer object and add to array list
-    customers.add(new Customer(generateCustomerId(), name, address));
+    // Create a Customer object and register it
+    Customer cust = new Customer(generateCustomerId(), name, address);
+    long ticket = log(customerRecord(cust.getId(), name, address));
+    try {
+      sync(ticket);
+    } finally {
+      customers.add(cust);
+    }
+    return cust.getId();
+  }
+
+  /**
+   * Create a new general (option-less) product and add it to the catalog
+   * @param name - The new product's name
+   * @param category - Category of the product, must not be BOOKS or SHOES
+   * @param price - Price of the product
+   * @param stock - Initial stock count of the product
+   * @return productId - ID generated for the new product
+   */
+  public String createProduct(String name, Product.Category category, double price, int stock) {
+    if (name == null || name.isEmpty()) {
+      throw new InvalidNameException("Invalid Product Name");
+    } else if (category == Product.Category.BOOKS || category == Product.Category.SHOES) {
+      throw new InvalidProductOptionException("Category " + category + " products need product options");
+    }
+    ProductCatalog catalog = catalog();   // Loads the catalog first, so the new ID follows the loaded products
+    String prodId = generateProductId();
+    long ticket = log(productRecord(prodId, name, category, price, stock));
+    try {
+      sync(ticket);
+    } finally {
+      catalog.add(new Product(name, prodId, price, stock, category, 0.0));
+    }
+    return prodId;
+  }
+
+  /**
+   * Create a new shoe product and add it to the catalog
+   * @param name - The new shoe's name
+   * @param price - Price of the shoe
+   * @param stock - Initial stock of the given size and colour
+   * @param productOptions - Size and colour that the stock is for (e.g. 6Black, 10Brown)
+   * @return productId - ID generated for the new shoe
+   */
+  public String createShoes(String name, double price, int stock, String productOptions) {
+    if (name == null || name.isEmpty()) {
+      throw new InvalidNameException("Invalid Product Name");
+    } else if (Shoes.parseVariant(productOptions) < 0) {
+      throw new InvalidProductOptionException("Product Shoe Invalid Options: " + productOptions);
+    }
+    ProductCatalog catalog = catalog();
+    String prodId = generateProductId();
+    long ticket = log(new OrderJournal.Record(JOURNAL_SHOES).text(prodId).text(name).decimal(price).number(stock).text(productOptions));
+    try {
+      sync(ticket);
+    } finally {
+      catalog.add(new Shoes(name, prodId, price, stock, productOptions));
+    }
+    return prodId;
   }
 
   /**
@@ -312,22 +650,17 @@ public class ECommerceSystem {
    * @return ord - Reference to the order
    */
   public ProductOrder shipOrder(String orderNumber) {
-    ProductOrder ord = new ProductOrder("0", new Product(), new Customer("0"), "null");
-    boolean existingOrder = false;
-    for (ProductOrder o : orders) {
-      if (o.getOrderNumber().equals(orderNumber)) { // Checks if the order number exists
-        existingOrder = true;
-        ord = o;
-      }
-    }
-    if (!existingOrder) {
+    long[] ticket = new long[1];
+    // Removes order from orders, if the order number exists and the shipment could be recorded
+    ProductOrder ord = orders.remove(orderNumber, o -> ticket[0] = log(shipRecord(orderNumber)));
+    if (ord == null) {
       throw new InvalidOrderException("Order " + orderNumber + " Not Found");
     }
-    if (orders.contains(ord)) { // Removes order from orders list
-      orders.remove(ord);
+    try {
+      sync(ticket[0]);
+    } finally {
+      shippedOrders.add(ord); // Adds order to shippedOrders
     }
-
-    shippedOrders.add(ord); // Adds order to shippedOrders list 
     return ord;
   }
 
@@ -336,20 +669,13 @@ public class ECommerceSystem {
    * @param orderNumber - ID of order to be cancelled
    */
   public void cancelOrder(String orderNumber) {
-    boolean existingOrder = false;
-    ProductOrder ord = new ProductOrder("0", new Product(), new Customer("0"), "null");
-    for (ProductOrder o : orders) {
-      if (o.getOrderNumber().equals(orderNumber)) { // Checks if order number exists
-        existingOrder = true;
-        ord = o;
-      }
-    }
-    if (!existingOrder) {
-      throw new InvalidOrderException("Order " + orderNumber + " Not Found"); // Sets errMsg and returns false, if order number does not exist
-    } else {
-      orders.remove(ord); // Removes order from orders list
+    long[] ticket = new long[1];
+    // Removes order from orders, if the order number exists and the cancellation could be recorded
+    ProductOrder ord = orders.remove(orderNumber, o -> ticket[0] = log(cancelRecord(orderNumber)));
+    if (ord == null) {
+      throw new InvalidOrderException("Order " + orderNumber + " Not Found");
     }
-
+    sync(ticket[0]);
   }
 
   /**
@@ -359,7 +685,7 @@ public class ECommerceSystem {
    */
   public boolean isBook(String productId) 
   {
-    Product product = prods.get(productId);
+    Product product = catalog().get(productId);
     if(product == null) {
       return false;
     } else if (product.getCategory().equals(Product.Category.BOOKS)){
@@ -376,7 +702,7 @@ public class ECommerceSystem {
    */
   public boolean isShoe(String productId)
   {
-      Product product = prods.get(productId);
+      Product product = catalog().get(productId);
       if(product == null) {
         return false;
       } else if (product.getCategory().equals(Product.Category.SHOES)){
@@ -386,25 +712,22 @@ public class ECommerceSystem {
     return false;
   }
   
+  /**
+   * Finds the product using the given productId
+   * @param productId - ID number representing product to be found
+   * @return product - Product object, or null if no product has that ID
+   */
+  public Product findProduct(String productId) {
+    return catalog().get(productId);
+  }
+
   /**
    * Finds the customer using the given customerId
    * @param customerId - ID number representing customer to be found
    * @return cust - Customer object, if customer is found
    */
   public Customer findCustomer(String customerId) {
-    Customer cust = null;
-    boolean custIdExist = false;
-    
-    for (Customer c : customers) {
-      if (c.getId().equals(customerId)) { // Checks if the customerId given exists
-        custIdExist = true;
-        cust = c;
-      }
-    }
-    if (!custIdExist) {
-      return null;
-    }
-    return cust;
+    return customers.find(customerId);
   }
 
   /**
@@ -417,16 +740,26 @@ public class ECommerceSystem {
   public String addToCart(String productId, String customerId, String productOptions) 
   {
     Customer c = findCustomer(customerId);
-    Product product = prods.get(productId);
+    Product product = catalog().get(productId);
     if(c == null || c.getName().isEmpty()) {  // Throws UnknownCustomerException if the customerId given does not exist.
       throw new UnknownCustomerException("Customer " + customerId + " Not Found");
     } else if (product == null) {   // Throws UnknownProductException if the productId given does not exist.
       throw new UnknownProductException("Product " + productId + " Not Found");
     } 
-    Cart cart = c.getCart();
-    if(product.validOptions(productOptions)) {
-      CartItem item = new CartItem(productOptions, product);  // Converts the product to type CartItem
-      cart.getCartList().add(item);
+    int variant = product.variantOf(productOptions);    // Options are parsed here, once, and kept as a variant slot
+    if(variant >= 0) {
+      while (true) {
+        Cart cart = c.getCart();    // Created on the customer's first add
+        synchronized (cart) {
+          if (cart.isReleased()) {   // Expired just now; the customer gets a new cart
+            continue;
+          }
+          cart.add(product, variant, 1);   // Raises the quantity if this product and format was the last added
+          touchCart(cart);
+        }
+        break;
+      }
+      expireCarts();
       return "Product " + productId + " has been added to Customer's " + customerId + " Cart.";
     } else {
       throw new InvalidProductOptionException("Product Book ProductId " + productId + " Invalid Options: " + productOptions);
@@ -435,7 +768,7 @@ public class ECommerceSystem {
   }
 
   /**
-   * Removes specified product to customer's cart
+   * Removes one unit of specified product from customer's cart
    * @param productId - ID of product to be removed
    * @param customerId - ID of customer whose cart the product will be removed from
    * @return msg - To let customer know that the product has been removed from the cart
@@ -443,29 +776,31 @@ public class ECommerceSystem {
   public String removeFromCart(String productId, String customerId) 
   {
       Customer c = findCustomer(customerId);
-      Product product = prods.get(productId);
+      Product product = catalog().get(productId);
       if(c == null || c.getName().isEmpty()) {  // Throws UnknownCustomerException if the customerId given does not exist.
         throw new UnknownCustomerException("Customer " + customerId + " Not Found");
       } else if (product == null) {  // Throws UnknownProductException if the productId given does not exist.
         throw new UnknownProductException("Product " + productId + " Not Found");
       } 
-      Cart cart = c.getCart();    // Gets the customer's cart
+      Cart cart = c.peekCart();    // Gets the customer's cart, if they have one
       boolean found = false;
-      for(CartItem cItem: cart.getCartList()) {     // Finds the cart item assoicated with the given productId
-        if(cItem.getProduct().equals(product)) {    // Checks if the given product is in the customers cart.
-          cart.getCartList().remove(cItem);
-          return "Product " + productId + " has been removed to Customer " + customerId + "'s Cart.";
+      if (cart != null) {
+        synchronized (cart) {
+          found = cart.remove(product);   // Looks the product's first line up directly and lowers its quantity
+          if (found) {
+            touchCart(cart);
+          }
         }
       }
 
       if(!found) {
         return "Product " + productId + " was not found in Customer " + customerId + "'s' Cart.";
       }
-    return "";
+      return "Product " + productId + " has been removed to Customer " + customerId + "'s Cart.";
   }
 
   /**
-   * Prints all items in customer's cart
+   * Prints all items in customer's cart, one row per unit, in the order they were added
    * @param customerId - ID of customer whose cart will be printed
    */
   public void printCart(String customerId) 
@@ -475,17 +810,35 @@ public class ECommerceSystem {
       throw new UnknownCustomerException("Customer " + customerId + " Not Found");
     }
 
-    ArrayList<CartItem> cart = cust.getCart().getCartList();  // Get's customer's cart.
+    ArrayList<CartItem> cart;
+    Cart current = cust.peekCart();
+    if (current == null) {
+      cart = new ArrayList<CartItem>();   // No cart, or it expired
+    } else {
+      synchronized (current) {
+        cart = current.getItems();  // Get's a copy of the customer's cart.
+      }
+    }
 
-    System.out.println(cust.getName() + "'s Cart:");  // Print's items in customers cart
+    Renderer out = new Renderer(System.out);
+    out.text(cust.getName() + "'s Cart:\n");  // Print's items in customers cart, one row per unit
     for(CartItem item: cart) {
-      item.print();
+      for (int i = 0; i < item.getQuantity(); i++) {
+        item.render(out);
+        out.endRow();
+      }
     }
+    out.flush();
 
   }
 
   /**
-   * Orders all items in customers cart (Creates productOrder for each product).
+   * Orders all items in customers cart (Creates productOrder for each unit of each product).
+   * Either every item is ordered or none is: stock is reserved for the whole cart first,
+   * one reservation per line for its whole quantity,
+   * and if any item is out of stock the reservations already made are released and the
+   * cart is left as it was. The orders are then added in one batch, numbered in the
+   * order printCart() lists the units.
    * @param customerId - ID of customer whose cart will be ordered
    * @return msg - A string to let customer know that their cart has been ordered
    */
@@ -495,53 +848,128 @@ public class ECommerceSystem {
     if(c == null || c.getName().isEmpty()) {    // Checks if the given customerId is a real customer.
       throw new UnknownCustomerException("Customer " + customerId + " Not Found");
     }
-    Cart cart = c.getCart();
+    Cart cart = c.peekCart();
+    if (cart == null) {
+      return "Customer " + customerId + "'s cart has been ordered.";   // Nothing to order
+    }
+
+    synchronized (cart) {
+      ArrayList<CartItem> items = cart.getItems();   // Products and options were resolved when the items were added
+      for (int i = 0; i < items.size(); i++) {   // Reserves stock for every line
+        CartItem item = items.get(i);
+        if (!item.getProduct().tryReserveStock(item.getVariant(), item.getQuantity())) {
+          for (int j = 0; j < i; j++) {   // Puts back what was already reserved
+            items.get(j).getProduct().releaseStock(items.get(j).getVariant(), items.get(j).getQuantity());
+          }
+          throw new NoStockException("No Stock: " + item.getProduct().getId() + " (cart was not ordered)");
+        }
+      }
 
-    for (CartItem item: cart.getCartList()) {   // Loops through all the items in the cart. 
-      orderProduct(item.getProduct().getId(), customerId, item.getProductOptions());
+      ArrayList<ProductOrder> batch = new ArrayList<ProductOrder>(cart.units());
+      for (CartItem item : items) {
+        for (int i = 0; i < item.getQuantity(); i++) {
+          batch.add(new ProductOrder(generateOrderNumber(), item.getProduct(), c, item.getVariant()));
+        }
+      }
+      long ticket = 0;
+      if (journal != null) {
+        ArrayList<OrderJournal.Record> records = new ArrayList<OrderJournal.Record>(batch.size());
+        for (ProductOrder o : batch) {
+          records.add(orderRecord(o.getOrderNumber(), c.getId(), o.getProduct().getId(), o.getVariant()));
+        }
+        try {
+          ticket = journal.append(records);   // The whole cart is written with one disk sync
+        } catch (RuntimeException e) {
+          for (CartItem item : items) {   // Not recorded, so the cart is not ordered
+            item.getProduct().releaseStock(item.getVariant(), item.getQuantity());
+          }
+          throw e;
+        }
+      }
+      try {
+        sync(ticket);
+      } finally {
+        orders.addAll(batch);
+        for (CartItem item : items) {
+          orderCounts.record(item.getProduct(), item.getQuantity());   // Keeping track of the products ordered
+        }
+        cart.clear();   // Clears the customer's cart
+        touchCart(cart);    // Releases it, as it is empty
+      }
     }
-    cart.getCartList().clear();   // Clears the customer's list
     return "Customer " + customerId + "'s cart has been ordered.";
   }
 
+  /**
+   * Restarts a changed cart's time to live, or releases the cart if it is now empty.
+   * The caller holds the cart's lock.
+   * @param cart - Cart that was changed
+   */
+  private void touchCart(Cart cart) {
+    if (cart.isEmpty()) {
+      cartExpiry.remove(cart);
+      cart.release();
+    } else {
+      cartExpiry.touch(cart, System.currentTimeMillis());
+    }
+  }
+
+  /**
+   * Releases the carts that have not been touched for the cart time to live, and the
+   * oldest carts while all carts together hold more lines than the budget. Runs as carts
+   * are added to, so it does not need to be called; calling it from a timer releases
+   * idle carts sooner.
+   * @return released - Number of carts released
+   */
+  public int expireCarts() {
+    return cartExpiry.expire(System.currentTimeMillis());
+  }
+
+  /**
+   * Changes how long untouched carts are kept and how many cart lines are kept in all.
+   * @param ttlMillis - Time to live of a cart after it was last changed, in milliseconds
+   * @param maxLines - Most cart lines kept; the oldest carts are released beyond it
+   */
+  public void setCartLimits(long ttlMillis, int maxLines) {
+    cartExpiry.setTtl(ttlMillis);
+    cartExpiry.setMaxLines(maxLines);
+  }
+
   /**
    * Adds +1 order count for given productId.
    * @param productId - ID of product to be incremented
    */
   public void addOrders (String productId) 
   {
-    if(orderStats.containsKey(productId)) {
-      int count = orderStats.get(productId);
-      orderStats.put(productId, count + 1);   // Adds 1 to the order count of the given product.
-    } else {
-      orderStats.put(productId, 1); // Creates new key since the given product has not been ordered.
+    Product product = catalog().get(productId);
+    if (product == null) {
+      throw new UnknownProductException("Product " + productId + " Not Found");
     }
+    orderCounts.record(product, 1);
   }
 
   /**
-   * Prints the stats of the orders
+   * @param k - Maximum number of products to list
+   * @return bestsellers - Up to k of the most ordered products with their order counts, most ordered first
    */
-  public void printStats() 
+  public ArrayList<BestsellerBoard.Entry> getBestsellers(int k)
   {
-    ArrayList<Integer> counts = new ArrayList<>();
-
-    for (String id: orderStats.keySet()) {
-      counts.add(orderStats.get(id));   // Adds all the order counts of each product to ArrayList.
-    }
-
-    Collections.sort(counts);   // Sorts it from largest counts to least.
+    orderCounts.drainTo(bestsellers);
+    return bestsellers.top(k);
+  }
 
-    while(counts.size() >= 1 && counts.size()-1 >= 0) { // Ensures all counts are accounted for.
-      for(String id: orderStats.keySet()) {
-        if(counts.get(counts.size()-1) == orderStats.get(id)) { // Checks if the count matches its corresponding product.
-          System.out.printf("\nName: %-5s Id: %-5s Times Ordered: %-10s", prods.get(id).getName(), id, orderStats.get(id));
-          counts.remove(counts.size()-1);
-        }
-        if(counts.size()-1 < 0) {   // Breaks the for loop if there is no more counts to check.
-          break;
-        }
-      }
+  /**
+   * Prints the stats of the orders, most ordered products first
+   */
+  public void printStats() 
+  {
+    Renderer out = new Renderer(System.out);
+    for (BestsellerBoard.Entry e : getBestsellers(Integer.MAX_VALUE)) {
+      Product p = e.getProduct();
+      out.text("\nName: ").left(p.getName(), 5).text(" Id: ").left(p.getId(), 5).text(" Times Ordered: ").left(e.getCount(), 10);
+      out.endRow();
     }
+    out.flush();
   }
 
   /**
@@ -551,14 +979,20 @@ public class ECommerceSystem {
    * @return msg - To let customer know the product has been successfully rated
    */
   public String rateProduct(String productId, int rating) {
-    Product prod = prods.get(productId);
+    Product prod = catalog().get(productId);
     if(prod == null) {  // Checks if given product exists
       throw new UnknownProductException("Product " + productId + " Not Found");
     }
     if(rating < 1 || rating > 5) {  // Checks if rating is sensible
       throw new IllegalRatingException("Rating: " + rating + " is not in range 1-5");
     }
-    prod.setRatings(rating);
+    long ticket = log(rateRecord(productId, rating));
+    try {
+      sync(ticket);
+    } finally {
+      prod.setRatings(rating);
+      ratingIndex.update(prod);
+    }
     return "You have successfully rated Product " + productId + " " + rating + "/5";
   }
 
@@ -567,7 +1001,7 @@ public class ECommerceSystem {
    * @param productId - ID of product whose ratings will be printed
    */
   public void printRatings(String productId) {
-    Product prod = prods.get(productId);
+    Product prod = catalog().get(productId);
     if(prod == null) {  // Checks if given product exists.
       throw new UnknownProductException("Product " + productId + " Not Found");
     }
@@ -585,26 +1019,39 @@ public class ECommerceSystem {
    * @param rating - Number (1-5) rating to be printed
    */
   public void printAverageRating(String category, int rating) {
-    boolean categoryFound = false;
+    Product.Category categoryFound = null;
     for(Product.Category cats: Product.Category.values()) {
       if(category.equalsIgnoreCase(cats.toString())) {  // Checks if the given category exists
-        categoryFound = true;
+        categoryFound = cats;
       }
     }
-    if (!categoryFound) { // If given category does not exists throws UnknownCategoryException
+    if (categoryFound == null) { // If given category does not exists throws UnknownCategoryException
       throw new UnknownCategoryException("Category " + category + " does not exist.");
     }
     if(rating > 5 || rating < 1) {  // If rating is out of range, throws IllegalRatingException
       throw new IllegalRatingException("Rating: " + rating + " is not in range 1-5");
     }
 
-    for(String id: prods.keySet()) {
-      Product p = prods.get(id);
-      if(p.getAverageRating() >= rating && p.getCategory().toString().equalsIgnoreCase(category)) {   // Finds and prints all products fitting user's criteria.
-        p.print();
-        System.out.print("      Avg Rating: " +  p.getAverageRating());
-      }
+    Renderer out = new Renderer(System.out);
+    for(Product p: getTopRated(categoryFound, rating, 0, Integer.MAX_VALUE)) {   // Prints all products fitting user's criteria, best rated first.
+      p.render(out);
+      out.text("      Avg Rating: " +  p.getAverageRating());
+      out.endRow();
     }
+    out.flush();
+  }
+
+  /**
+   * Lists the products of a category rated at least minRating, best rated first
+   * @param category - Category of the products
+   * @param minRating - Lowest average rating to include
+   * @param offset - Number of matching products to skip
+   * @param limit - Maximum number of products to return
+   * @return products - One page of matching products
+   */
+  public ArrayList<Product> getTopRated(Product.Category category, double minRating, int offset, int limit) {
+    catalog();   // Makes sure ratings saved with the catalog are indexed
+    return ratingIndex.ratedAtLeast(category, minRating, offset, limit);
   }
 
   /**
@@ -623,35 +1070,30 @@ public class ECommerceSystem {
 
   /**
    * Sorts books written by given author by year
-   * @param author - Author's books the user wants
+   * @param author - Author's books the user wants, matched ignoring case
    * @return list - ArrayList of books written by given author
    */
   public ArrayList<Book> booksByAuthor(String author) {
-    boolean authorExists = false;
-    ArrayList<Book> yearOrderedBooks = new ArrayList<Book>();
-    for (String id: prods.keySet()) { // Loops through all products
-      if (prods.get(id).getCategory().equals(Product.Category.BOOKS)) { // Checks if the product is a book
-        Book p1 = (Book) prods.get(id); // Casts the general product into a book
-        if (p1.getAuthor().equals(author)) { // Checks if the author given exists
-          authorExists = true;
-        }
-      }
-    }
-    if (!authorExists) { // Returns null if the author does not exist
+    ArrayList<Book> yearOrderedBooks = catalog().booksByAuthor(author);   // Kept sorted by year in the author index
+    if (yearOrderedBooks.isEmpty()) {
       throw new InvalidNameException("Author: " + author + " does not exist.");
     }
-    for (String id: prods.keySet()) {
-      if (prods.get(id).getCategory().equals(Product.Category.BOOKS)) {
-        Book p1 = (Book) prods.get(id);
-        if (p1.getAuthor().equals(author)) {
-          yearOrderedBooks.add(p1); // Adds all the books written by the given author to a list
-        }
-      }
-    }
-    Collections.sort(yearOrderedBooks, new YearComparator()); // Sorts the author's books by year
     return yearOrderedBooks;
   }
 
+  /**
+   * Finds the books of every author whose name starts with the given prefix
+   * @param prefix - Start of the author's name, matched ignoring case
+   * @return list - ArrayList of books by author and then by year
+   */
+  public ArrayList<Book> booksByAuthorPrefix(String prefix) {
+    ArrayList<Book> books = catalog().booksByAuthorPrefix(prefix);
+    if (books.isEmpty()) {
+      throw new InvalidNameException("No author starts with: " + prefix);
+    }
+    return books;
+  }
+
   /**
    * Compares two objects of type product based on their price.
    * Returns -1 when the first object is smaller, 1 when the first
@@ -672,15 +1114,33 @@ public class ECommerceSystem {
    * Sorts products by increasing price
    */
   public void sortByPrice() {
-    for (String id: prods.keySet()) {
-      products.add(prods.get(id));
+    Renderer out = new Renderer(System.out);
+    for(Product p: getProductsByPrice(0, Integer.MAX_VALUE)) {   // The catalog keeps a price-ordered view
+      p.render(out);
+      out.endRow();
     }
-    Collections.sort(products, new PriceComparator());
+    out.flush();
+  }
 
-    for(Product p: products) {
-      p.print();
-    }
-    products = new ArrayList<Product>();
+  /**
+   * Lists one page of the products ordered by price, cheapest first
+   * @param offset - Number of products to skip
+   * @param limit - Maximum number of products to return
+   * @return products - The page of products
+   */
+  public ArrayList<Product> getProductsByPrice(int offset, int limit) {
+    return catalog().byPrice().page(offset, limit);
+  }
+
+  /**
+   * Lists the page of products ordered by price that follows a product of the previous page
+   * @param price - Price of the last product of the previous page
+   * @param productId - ID of the last product of the previous page
+   * @param limit - Maximum number of products to return
+   * @return products - The page of products
+   */
+  public ArrayList<Product> getProductsByPriceAfter(double price, String productId, int limit) {
+    return catalog().byPrice().pageAfter(price, ProductCatalog.parseId(productId), limit);
   }
 
   /**
@@ -696,22 +1156,79 @@ public class ECommerceSystem {
    * Sort products alphabetically by product name
    */
   public void sortByName() {
-    for (String id: prods.keySet()) {
-      products.add(prods.get(id));
+    Renderer out = new Renderer(System.out);
+    for(Product p: getProductsByName(0, Integer.MAX_VALUE)) {   // The catalog keeps a name-ordered view
+      p.render(out);
+      out.endRow();
+    }
+    out.flush();
+  }
+
+  /**
+   * Lists one page of the products ordered by name
+   * @param offset - Number of products to skip
+   * @param limit - Maximum number of products to return
+   * @return products - The page of products
+   */
+  public ArrayList<Product> getProductsByName(int offset, int limit) {
+    return catalog().byName().page(offset, limit);
+  }
+
+  /**
+   * Lists the page of products ordered by name that follows a product of the previous page
+   * @param name - Name of the last product of the previous page
+   * @param productId - ID of the last product of the previous page
+   * @param limit - Maximum number of products to return
+   * @return products - The page of products
+   */
+  public ArrayList<Product> getProductsByNameAfter(String name, String productId, int limit) {
+    return catalog().byName().pageAfter(name, ProductCatalog.parseId(productId), limit);
+  }
+
+  /**
+   * Changes the price of a product
+   * @param productId - ID of the product
+   * @param price - The new price
+   */
+  public void repriceProduct(String productId, double price) {
+    Product product = catalog().get(productId);
+    if (product == null) {
+      throw new UnknownProductException("Product " + productId + " Not Found");
     }
-    Collections.sort(products, new NameComparator());
+    long ticket = log(new OrderJournal.Record(JOURNAL_PRICE).text(productId).decimal(price));
+    try {
+      sync(ticket);
+    } finally {
+      catalog().reprice(product, price);
+    }
+  }
 
-    for(Product p: products) {
-      p.print();
+  /**
+   * Changes the name of a product
+   * @param productId - ID of the product
+   * @param name - The new name
+   */
+  public void renameProduct(String productId, String name) {
+    if (name == null || name.isEmpty()) {
+      throw new InvalidNameException("Invalid Product Name");
+    }
+    Product product = catalog().get(productId);
+    if (product == null) {
+      throw new UnknownProductException("Product " + productId + " Not Found");
+    }
+    long ticket = log(new OrderJournal.Record(JOURNAL_NAME).text(productId).text(name));
+    try {
+      sync(ticket);
+    } finally {
+      catalog().rename(product, name);
     }
-    products = new ArrayList<Product>();
   }
 
   /**
    * Sort products alphabetically by product name
    */
   public void sortCustomersByName() {
-    Collections.sort(customers);
+    customers.sortByName();
   }
 }
 /**
@@ -826,3 +1343,14 @@ class UnknownCategoryException extends RuntimeException {
     super(message);
   }
 }
+
+/**
+* Exception class for when a journal names products, customers or stock the catalog does not have
+*/
+class JournalMismatchException extends RuntimeException {
+  public JournalMismatchException() {}
+
+  public JournalMismatchException(String message) {
+    super(message);
+  }
+}
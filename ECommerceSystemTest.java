@@ -0,0 +1,729 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * class ECommerceSystemTest checks ECommerceSystem behaviour that has been broken before.
+ * The tree has no build or test framework, so it is a plain program:
+ *
+ *   javac *.java && java ECommerceSystemTest
+ *
+ * It prints each check and exits with status 1 if any fails.
+ */
+public class ECommerceSystemTest {
+    private static int failures;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Path dir = Files.createTempDirectory("ecommerce-test");
+        Path catalogFile = Files.createFile(dir.resolve("products.txt"));
+        try {
+            shoeOrderWithOptions(catalogFile);
+            shoeOrderWithoutOptions(catalogFile);
+            plainOrderWithOptions(catalogFile);
+            concurrentOrders(catalogFile);
+            journalRecovery(dir);
+            journalMismatch(dir);
+            cartExpiryAtLevelBoundaries();
+            cartExpiryBeyondWheel();
+            cartExpiryByLineBudget();
+            cartTouchedWhileExpiring();
+            idsUniqueAcrossThreads();
+            idsAfterReplay();
+            archivedOrdersOutOfHotTier();
+            cartMergesRepeatedAdds();
+            cartRemoveLowersQuantity();
+            catalogChunkCutsInsideRecords(dir);
+            sortedViewsFollowRepriceAndRename(catalogFile);
+            ratingsPastIntRange();
+            concurrentRatings();
+        } finally {
+            Files.deleteIfExists(CatalogSnapshot.snapshotFor(catalogFile));
+            Files.deleteIfExists(catalogFile);
+            Files.deleteIfExists(dir);
+        }
+        System.out.println(failures == 0 ? "PASS" : failures + " check(s) FAILED");
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * A shoe order with valid size and colour is placed and takes one shoe out of stock.
+     * orderProduct once rejected every shoe order because of operator precedence.
+     */
+    private static void shoeOrderWithOptions(Path catalogFile) {
+        ECommerceSystem system = new ECommerceSystem(catalogFile.toString());
+        String customerId = system.createCustomer("Inigo Montoya", "1 SwordMaker Lane, Florin");
+        String shoesId = system.createShoes("Boot", 60.0, 3, "9Brown");
+        try {
+            String orderNumber = system.orderProduct(shoesId, customerId, "9Brown");
+            check("shoe order with options gets an order number", orderNumber != null && !orderNumber.isEmpty());
+            check("shoe order with options takes one from stock", system.findProduct(shoesId).getStockCount("9Brown") == 2);
+        } catch (RuntimeException e) {
+            check("shoe order with options succeeds (threw " + e + ")", false);
+        }
+    }
+
+    /**
+     * A shoe ordered without options must go through the shoe ordering command.
+     */
+    private static void shoeOrderWithoutOptions(Path catalogFile) {
+        ECommerceSystem system = new ECommerceSystem(catalogFile.toString());
+        String customerId = system.createCustomer("Prince Humperdinck", "The Castle, Florin");
+        String shoesId = system.createShoes("Boot", 60.0, 3, "9Brown");
+        try {
+            system.orderProduct(shoesId, customerId, null);
+            check("shoe order without options is rejected", false);
+        } catch (IncorrectOrderingException e) {
+            check("shoe order without options is rejected", true);
+        }
+    }
+
+    /**
+     * A product that has no options cannot be ordered with options.
+     */
+    private static void plainOrderWithOptions(Path catalogFile) {
+        ECommerceSystem system = new ECommerceSystem(catalogFile.toString());
+        String customerId = system.createCustomer("Andy Dufresne", "Shawshank Prison, Maine");
+        String productId = system.createProduct("Rock Hammer", Product.Category.GENERAL, 10.0, 3);
+        try {
+            system.orderProduct(productId, customerId, "9Brown");
+            check("plain order with options is rejected", false);
+        } catch (IncorrectOrderingException e) {
+            check("plain order with options is rejected", true);
+        }
+    }
+
+    /**
+     * Places orders from many threads at once against a handful of products with limited
+     * stock. No stock may go negative, every successful order must be recorded and counted
+     * exactly once, and stock must fall by exactly the number of successful orders.
+     */
+    private static void concurrentOrders(Path catalogFile) throws InterruptedException {
+        int threads = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+        int attemptsPerThread = 50000;
+        ECommerceSystem system = new ECommerceSystem(catalogFile.toString());
+        String[] productIds = new String[8];
+        int[] initialStock = new int[productIds.length];
+        for (int i = 0; i < productIds.length; i++) {
+            initialStock[i] = 1000 * (i + 1);
+            productIds[i] = system.createProduct("Stress Widget " + i, Product.Category.GENERAL, 1.0, initialStock[i]);
+        }
+        String[] customerIds = new String[16];
+        for (int i = 0; i < customerIds.length; i++) {
+            customerIds[i] = system.createCustomer("Stress Customer " + i, i + " Stress Street");
+        }
+
+        AtomicIntegerArray successes = new AtomicIntegerArray(productIds.length);
+        ArrayList<Thread> workers = new ArrayList<Thread>();
+        for (int t = 0; t < threads; t++) {
+            int seed = t;
+            Thread worker = new Thread(() -> {
+                Random random = new Random(seed);
+                for (int i = 0; i < attemptsPerThread; i++) {
+                    int p = random.nextInt(productIds.length);
+                    try {
+                        system.orderProduct(productIds[p], customerIds[random.nextInt(customerIds.length)], null);
+                        successes.incrementAndGet(p);
+                    } catch (NoStockException e) {
+                        // Expected once a product sells out
+                    }
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        int totalSuccesses = 0;
+        boolean stockOk = true;
+        for (int i = 0; i < productIds.length; i++) {
+            int left = system.findProduct(productIds[i]).getStockCount(null);
+            totalSuccesses += successes.get(i);
+            stockOk &= left >= 0 && initialStock[i] - left == successes.get(i);
+        }
+        check("concurrent orders take exactly what they ordered from stock", stockOk);
+        HashSet<String> orderNumbers = new HashSet<String>();
+        int recorded = 0;
+        for (String customerId : customerIds) {
+            for (ProductOrder o : system.getOrderHistory(customerId, 0, Integer.MAX_VALUE)) {
+                orderNumbers.add(o.getOrderNumber());
+                recorded++;
+            }
+        }
+        check("concurrent orders are all recorded, with distinct numbers", recorded == totalSuccesses && orderNumbers.size() == recorded);
+        boolean countsOk = true;
+        for (BestsellerBoard.Entry e : system.getBestsellers(Integer.MAX_VALUE)) {
+            int p = Arrays.asList(productIds).indexOf(e.getProduct().getId());
+            countsOk &= p >= 0 && e.getCount() == successes.get(p);
+        }
+        check("concurrent orders are counted once each in the stats", countsOk);
+    }
+
+    /**
+     * Replay after a crash: a torn last record, a record failing its checksum and a corrupt
+     * length each end the journal at the last good record before them, and the file is cut
+     * back to that record so new records follow on from it.
+     */
+    private static void journalRecovery(Path dir) throws IOException {
+        Path file = dir.resolve("recovery.journal");
+        long[] ends = new long[10];     // File size after each record
+        try (OrderJournal journal = new OrderJournal(file)) {
+            journal.replay(r -> { });
+            for (int i = 0; i < ends.length; i++) {
+                journal.commit(new OrderJournal.Record(1).text("record " + i).number(i));
+                ends[i] = Files.size(file);
+            }
+        }
+        check("journal replays every record", replayCount(file) == ends.length);
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(ends[9] - 3);      // A crash while writing the last record
+        }
+        check("torn last record is dropped", replayCount(file) == 9);
+        check("torn last record is cut from the file", Files.size(file) == ends[8]);
+
+        flipByte(file, ends[5] - 1);        // Last payload byte of record 6
+        check("replay stops at a record that fails its checksum", replayCount(file) == 5);
+        check("records from the bad checksum on are cut from the file", Files.size(file) == ends[4]);
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(4).putInt(0, Integer.MAX_VALUE), ends[2]);  // Length of record 4
+        }
+        check("replay stops at a corrupt length", replayCount(file) == 3);
+        check("records from the corrupt length on are cut from the file", Files.size(file) == ends[2]);
+
+        try (OrderJournal journal = new OrderJournal(file)) {
+            journal.replay(r -> { });
+            journal.commit(new OrderJournal.Record(1).text("after recovery").number(3));
+        }
+        check("records appended after recovery are replayed", replayCount(file) == 4);
+        Files.delete(file);
+    }
+
+    /**
+     * A journal written against one catalog is reported, not replayed, against a catalog
+     * that lacks its products, and is closed again.
+     */
+    private static void journalMismatch(Path dir) throws IOException {
+        Path catalog = dir.resolve("one-product.txt");
+        Files.writeString(catalog, "GENERAL\nWidget\n1.0\n10\n\n");
+        Path emptyCatalog = dir.resolve("no-products.txt");
+        Files.createFile(emptyCatalog);
+        Path file = dir.resolve("mismatch.journal");
+        ECommerceSystem system = new ECommerceSystem(catalog.toString(), file.toString());
+        system.orderProduct("700", "900", null);
+        system.closeJournal();
+        int open = openDescriptors(file);
+        try {
+            new ECommerceSystem(emptyCatalog.toString(), file.toString());
+            check("journal for another catalog is rejected", false);
+        } catch (JournalMismatchException e) {
+            check("journal for another catalog is rejected", e.getMessage().contains(file.toString()));
+        }
+        check("rejected journal is closed", openDescriptors(file) == open);
+        for (Path p : new Path[] {file, catalog, emptyCatalog}) {
+            Files.deleteIfExists(CatalogSnapshot.snapshotFor(p));
+            Files.delete(p);
+        }
+    }
+
+    /**
+     * Carts expire exactly at their deadline when it falls on either side of a level
+     * boundary of the timing wheel, so they reach level 0 through one or more cascades,
+     * and when it falls on the very tick a higher level's slot is cascaded. Times are
+     * explicit, with a one millisecond tick, from an aligned and an unaligned start.
+     */
+    private static void cartExpiryAtLevelBoundaries() {
+        long[] ttls = {1, 27, 63, 64, 65, 4059, 4095, 4096, 4097, 262107, 262143, 262144, 262145};
+        boolean ok = true;
+        for (long start : new long[] {0, 37}) {
+            for (long ttl : ttls) {
+                CartExpiry wheel = new CartExpiry(ttl, 1, Integer.MAX_VALUE, start);
+                Cart cart = cartWith(1);
+                wheel.touch(cart, start);
+                ok &= wheel.expire(start + ttl / 2) == 0 && wheel.expire(start + ttl - 1) == 0 && !cart.isReleased();
+                ok &= wheel.expire(start + ttl) == 1 && cart.isReleased() && wheel.size() == 0 && wheel.lines() == 0;
+            }
+        }
+        check("carts expire at their deadline across wheel levels", ok);
+
+        long start = 37;
+        CartExpiry wheel = new CartExpiry(5000, 1, Integer.MAX_VALUE, start);
+        Cart cart = cartWith(1);
+        wheel.touch(cart, start);
+        int released = 0;
+        long now = start;
+        while (!cart.isReleased() && now < start + 10000) {
+            now += 7;
+            released += wheel.expire(now);
+        }
+        check("a cart advanced past in small steps expires within one step of its deadline",
+                released == 1 && now >= start + 5000 && now < start + 5007);
+    }
+
+    /**
+     * A deadline further off than the wheel reaches (2^24 ticks) is parked at the wheel's
+     * far end and rescheduled from there, so it still expires on time.
+     */
+    private static void cartExpiryBeyondWheel() {
+        long span = 1L << 24;
+        CartExpiry wheel = new CartExpiry(span + 100, 1, Integer.MAX_VALUE, 0);
+        Cart cart = cartWith(1);
+        wheel.touch(cart, 0);
+        boolean kept = wheel.expire(span) == 0 && wheel.expire(span + 99) == 0 && !cart.isReleased();
+        check("a cart due beyond the wheel's reach is kept until its deadline", kept);
+        check("a cart due beyond the wheel's reach expires at its deadline", wheel.expire(span + 100) == 1 && cart.isReleased());
+    }
+
+    /**
+     * Over the line budget, the least recently touched carts are released first, and
+     * touching a cart again makes it the most recent.
+     */
+    private static void cartExpiryByLineBudget() {
+        CartExpiry wheel = new CartExpiry(1000, 1, Integer.MAX_VALUE, 0);
+        Cart[] carts = new Cart[4];
+        for (int i = 0; i < carts.length; i++) {
+            carts[i] = cartWith(1);
+            wheel.touch(carts[i], 10 + i);
+        }
+        wheel.touch(carts[1], 14);
+        check("carts within the line budget are kept", wheel.expire(14) == 0 && wheel.lines() == 4);
+        wheel.setMaxLines(2);
+        int released = wheel.expire(14);
+        check("over the line budget the oldest carts are released",
+                released == 2 && carts[0].isReleased() && carts[2].isReleased() && !carts[1].isReleased() && !carts[3].isReleased());
+        check("released carts no longer count against the budget", wheel.size() == 2 && wheel.lines() == 2);
+
+        Cart big = cartWith(3);
+        wheel.setMaxLines(3);
+        wheel.touch(big, 15);
+        released = wheel.expire(15);
+        check("lines, not carts, are counted against the budget",
+                released == 2 && carts[1].isReleased() && carts[3].isReleased() && !big.isReleased() && wheel.lines() == 3);
+    }
+
+    /**
+     * A cart taken out of the wheel by expire() but touched again, under its lock, before
+     * expire() gets to release it is left alone.
+     */
+    private static void cartTouchedWhileExpiring() throws InterruptedException {
+        CartExpiry wheel = new CartExpiry(100, 1, Integer.MAX_VALUE, 0);
+        Cart cart = cartWith(1);
+        wheel.touch(cart, 0);
+        int[] released = {-1};
+        Thread expirer = new Thread(() -> released[0] = wheel.expire(200));
+        synchronized (cart) {
+            expirer.start();
+            while (expirer.getState() != Thread.State.BLOCKED && expirer.isAlive()) {
+                Thread.onSpinWait();    // Waits until expire() has taken the cart out and wants its lock
+            }
+            wheel.touch(cart, 200);
+        }
+        expirer.join();
+        check("a cart touched while being expired is not released", released[0] == 0 && !cart.isReleased() && wheel.size() == 1);
+        check("a cart touched while being expired expires later", wheel.expire(300) == 1 && cart.isReleased());
+    }
+
+    /**
+     * Threads on three nodes sharing one ID space never get the same ID, even while
+     * another thread keeps moving the allocators past IDs read back from a journal.
+     */
+    private static void idsUniqueAcrossThreads() throws InterruptedException {
+        IdAllocator[] nodes = {new IdAllocator(500, 0, 3), new IdAllocator(500, 1, 3), new IdAllocator(500, 2, 3)};
+        ConcurrentHashMap<Long, Boolean> seen = new ConcurrentHashMap<Long, Boolean>();
+        boolean[] duplicate = {false};
+        ArrayList<Thread> workers = new ArrayList<Thread>();
+        for (int t = 0; t < 12; t++) {
+            IdAllocator ids = nodes[t % nodes.length];
+            workers.add(new Thread(() -> {
+                for (int i = 0; i < 100000; i++) {
+                    if (seen.put(ids.next(), Boolean.TRUE) != null) {
+                        duplicate[0] = true;
+                    }
+                }
+            }));
+        }
+        workers.add(new Thread(() -> {
+            for (int i = 0; i < 2000; i++) {
+                nodes[i % nodes.length].advancePast(500 + i * 150L);
+            }
+        }));
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        check("IDs are unique across threads and nodes", !duplicate[0] && seen.size() == 12 * 100000);
+    }
+
+    /**
+     * After IDs are read back, e.g. by replay, new IDs continue after the highest of them,
+     * without a gap when they are in the allocator's own block.
+     */
+    private static void idsAfterReplay() {
+        IdAllocator ids = new IdAllocator(900);
+        for (long replayed = 900; replayed <= 903; replayed++) {
+            ids.advancePast(replayed);
+        }
+        check("IDs continue after replayed IDs without a gap", ids.next() == 904 && ids.next() == 905);
+        ids.advancePast(700);
+        check("moving past an old ID changes nothing", ids.next() == 906);
+        ids.advancePast(5000);
+        check("IDs continue after a replayed ID beyond the current block", ids.next() == 5001);
+
+        IdAllocator node = new IdAllocator(500, 1, 2);  // Leases blocks 1, 3, 5, ... of 64 IDs
+        node.advancePast(530);
+        check("a node skips IDs replayed in another node's block", node.next() == 564);
+        node.advancePast(600);
+        check("a node continues in its own block after replayed IDs", node.next() == 601);
+        check("IdAllocator.parse reads numeric IDs and rejects others",
+                IdAllocator.parse("1234") == 1234 && IdAllocator.parse("12a") == -1 && IdAllocator.parse("") == -1);
+    }
+
+    /**
+     * Shipped orders read back from the archive's records, after they have left the hot
+     * tier of the latest 1024 orders and across its 65536-record segments, have the order
+     * number, product, customer and format they were shipped with.
+     */
+    private static void archivedOrdersOutOfHotTier() {
+        HashMap<String, Product> products = new HashMap<String, Product>();
+        Product widget = new Product("Widget", "700", 1.0, 0, Product.Category.GENERAL, 0.0);
+        Shoes boot = new Shoes("Boot", "701", 60.0, 0, "9Brown");
+        products.put(widget.getId(), widget);
+        products.put(boot.getId(), boot);
+        HashMap<String, Customer> customers = new HashMap<String, Customer>();
+        for (int c = 0; c < 3; c++) {
+            Customer customer = new Customer(Integer.toString(900 + c), "Customer " + c, c + " Archive Road");
+            customers.put(customer.getId(), customer);
+        }
+        ShippedOrderArchive archive = new ShippedOrderArchive(products::get, customers::get);
+        int count = 70000;
+        ProductOrder[] shipped = new ProductOrder[count];
+        for (int i = 0; i < count; i++) {
+            Product product = i % 2 == 0 ? widget : boot;
+            String options = product == boot ? (i % 4 == 1 ? "9Brown" : "6Black") : null;
+            shipped[i] = new ProductOrder(Long.toString(500 + i), product, customers.get(Integer.toString(900 + i % 3)), options);
+            archive.add(shipped[i]);
+        }
+
+        ArrayList<ProductOrder> all = new ArrayList<ProductOrder>();
+        archive.forEach(all::add);
+        boolean same = all.size() == count;
+        for (int i = 0; same && i < count; i++) {
+            same = sameOrder(all.get(i), shipped[i]);
+        }
+        check("archived orders read back as they were shipped", same && archive.size() == count);
+        check("orders out of the hot tier are rebuilt from their records", all.get(0) != shipped[0] && all.get(count - 1) == shipped[count - 1]);
+
+        ArrayList<ProductOrder> mine = new ArrayList<ProductOrder>();
+        archive.forEachOf("901", mine::add);
+        boolean ofCustomer = mine.size() == archive.countOf("901") && mine.size() == (count + 1) / 3;
+        for (int k = 0; ofCustomer && k < mine.size(); k++) {
+            ofCustomer = sameOrder(mine.get(k), shipped[1 + 3 * k]);
+        }
+        check("a customer's archived orders are theirs, in shipping order", ofCustomer);
+
+        ArrayList<ProductOrder> page = new ArrayList<ProductOrder>();
+        archive.addPageOf("902", 21840, 10, page);     // Spans the first segment boundary
+        boolean paged = page.size() == 10;
+        for (int k = 0; paged && k < page.size(); k++) {
+            paged = sameOrder(page.get(k), shipped[2 + 3 * (21840 + k)]);
+        }
+        check("a page of archived orders starts at its offset", paged);
+        page.clear();
+        archive.addPageOf("902", archive.countOf("902"), 10, page);
+        check("a page past the end of a customer's orders is empty", page.isEmpty() && archive.countOf("999") == 0);
+    }
+
+    private static boolean sameOrder(ProductOrder a, ProductOrder b) {
+        return a.getOrderNumber().equals(b.getOrderNumber()) && a.getProduct() == b.getProduct()
+                && a.getCustomer() == b.getCustomer() && a.getVariant() == b.getVariant();
+    }
+
+    /**
+     * Adding the product and format added last raises that line's quantity; adding it
+     * again after something else starts a new line, so the cart keeps the order things
+     * were added in.
+     */
+    private static void cartMergesRepeatedAdds() {
+        Product widget = new Product("Widget", "700", 1.0, 0, Product.Category.GENERAL, 0.0);
+        Shoes boot = new Shoes("Boot", "701", 60.0, 0, "9Brown");
+        int brown = boot.variantOf("9Brown");
+        int black = boot.variantOf("6Black");
+        Cart cart = new Cart();
+        cart.add(widget, 0, 1);
+        cart.add(widget, 0, 1);
+        cart.add(widget, 0, 2);
+        check("repeated adds are merged into one line", cart.lineCount() == 1 && cart.units() == 4 && cart.quantityOf(widget, 0) == 4);
+        cart.add(boot, brown, 1);
+        cart.add(boot, black, 1);
+        cart.add(widget, 0, 1);
+        check("other products and formats get their own lines", cart.lineCount() == 4 && cart.units() == 7);
+        check("quantities are counted across a product's lines",
+                cart.quantityOf(widget, 0) == 5 && cart.quantityOf(boot, brown) == 1 && cart.quantityOf(boot, black) == 1);
+        check("lines are listed in the order they were added", lineString(cart).equals("700x4 701/" + brown + "x1 701/" + black + "x1 700x1"));
+        check("the per-unit list is in the order units were added", cart.getCartList().size() == 7
+                && cart.getCartList().get(4).getVariant() == brown && cart.getCartList().get(5).getVariant() == black && cart.getCartList().get(6).getProduct() == widget);
+    }
+
+    /**
+     * Removing lowers the quantity of the product's earliest line and takes the line out
+     * when it reaches zero; lines of one product and format left next to each other merge.
+     */
+    private static void cartRemoveLowersQuantity() {
+        Product widget = new Product("Widget", "700", 1.0, 0, Product.Category.GENERAL, 0.0);
+        Product hammer = new Product("Hammer", "702", 1.0, 0, Product.Category.GENERAL, 0.0);
+        Cart cart = new Cart();
+        cart.add(widget, 0, 2);
+        cart.add(hammer, 0, 1);
+        cart.add(widget, 0, 1);
+        check("remove lowers the earliest line's quantity", cart.remove(widget) && lineString(cart).equals("700x1 702x1 700x1") && cart.units() == 3);
+        check("remove takes out a line that reaches zero", cart.remove(hammer) && cart.lineCount() == 1 && lineString(cart).equals("700x2"));
+        check("removing a product not in the cart changes nothing", !cart.remove(hammer) && cart.units() == 2);
+        cart.add(hammer, 0, 1);
+        check("removing more than a line holds goes on to the next line", cart.remove(widget, 0, 3) && lineString(cart).equals("702x1") && cart.units() == 1);
+        check("removing the last unit empties the cart", cart.remove(hammer) && cart.isEmpty() && cart.lineCount() == 0 && cart.getItems().isEmpty());
+        cart.add(hammer, 0, 1);
+        check("an emptied cart takes new items", lineString(cart).equals("702x1"));
+
+        Shoes boot = new Shoes("Boot", "701", 60.0, 0, "9Brown");
+        int brown = boot.variantOf("9Brown");
+        int black = boot.variantOf("6Black");
+        Cart shoes = new Cart();
+        shoes.add(boot, brown, 1);
+        shoes.add(boot, black, 1);
+        shoes.add(boot, brown, 1);
+        shoes.add(boot, black, 1);
+        check("removing one format merges the lines of another left side by side",
+                shoes.remove(boot, black, 2) && lineString(shoes).equals("701/" + brown + "x2") && shoes.lineCount() == 1);
+    }
+
+    /**
+     * @return lines - The cart's lines as "product[/variant]xquantity", separated by spaces
+     */
+    private static String lineString(Cart cart) {
+        StringBuilder b = new StringBuilder();
+        for (CartItem item : cart.getItems()) {
+            b.append(b.length() > 0 ? " " : "").append(item.getProduct().getId());
+            if (item.getProduct() instanceof Shoes) {
+                b.append('/').append(item.getVariant());
+            }
+            b.append('x').append(item.getQuantity());
+        }
+        return b.toString();
+    }
+
+    /**
+     * The catalog loader cuts large files into chunks at lines holding a category name.
+     * In this catalog every product is named after a category, so many cuts fall on a
+     * name line inside a record; the chunks must still join into exactly the products
+     * of the file, in file order.
+     */
+    private static void catalogChunkCutsInsideRecords(Path dir) throws IOException {
+        String[] categories = {"COMPUTERS", "FURNITURE", "BOOKS", "CLOTHING", "GENERAL"};
+        Path file = dir.resolve("category-names.txt");
+        ArrayList<String> expected = new ArrayList<String>();
+        StringBuilder text = new StringBuilder();
+        Random random = new Random(7);
+        while (text.length() < 12 << 20) {  // Large enough to be cut into several chunks
+            String category = categories[random.nextInt(categories.length)];
+            String name = categories[random.nextInt(categories.length)];
+            int price = 1 + random.nextInt(500);
+            if (category.equals("BOOKS")) {
+                text.append("BOOKS\n").append(name).append('\n').append(price).append(".0\n")
+                        .append(random.nextInt(20)).append(' ').append(random.nextInt(10)).append('\n')
+                        .append("GENERAL:").append(name).append(':').append(1900 + random.nextInt(125)).append('\n');
+                expected.add("BOOKS/" + name + "/" + price + ".0/GENERAL/" + name);
+            } else {
+                text.append(category).append('\n').append(name).append('\n').append(price).append(".0\n")
+                        .append(random.nextInt(100)).append("\n\n");
+                expected.add(category + "/" + name + "/" + price + ".0");
+            }
+        }
+        Files.writeString(file, text);
+
+        ArrayList<String> loaded = new ArrayList<String>();
+        for (Product p : new CatalogLoader().load(file)) {
+            String row = p.getCategory() + "/" + p.getName() + "/" + p.getPrice();
+            if (p instanceof Book) {
+                row += "/" + ((Book) p).getTitle() + "/" + ((Book) p).getAuthor();
+            }
+            loaded.add(row);
+        }
+        check("a catalog cut inside records loads every product, in file order", loaded.equals(expected));
+        Files.delete(file);
+    }
+
+    /**
+     * After repriceProduct and renameProduct the price and name listings must hold every
+     * product once, ordered by its new key and then by ID, whether read by offset or by
+     * following the last product of each page.
+     */
+    private static void sortedViewsFollowRepriceAndRename(Path catalogFile) {
+        ECommerceSystem system = new ECommerceSystem(catalogFile.toString());
+        Random random = new Random(18);
+        ArrayList<String> ids = new ArrayList<String>();
+        for (int i = 0; i < 300; i++) {
+            // Few distinct prices and names, so many products share a key
+            ids.add(system.createProduct("Item " + random.nextInt(40), Product.Category.GENERAL, random.nextInt(30), 1));
+        }
+        boolean priceOk = true;
+        boolean nameOk = true;
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < 50; i++) {
+                String id = ids.get(random.nextInt(ids.size()));
+                if (random.nextBoolean()) {
+                    system.repriceProduct(id, random.nextInt(30));
+                } else {
+                    system.renameProduct(id, "Item " + random.nextInt(40));
+                }
+            }
+            ArrayList<Product> expected = new ArrayList<Product>();
+            for (String id : ids) {
+                expected.add(system.findProduct(id));
+            }
+            expected.sort((a, b) -> a.getPrice() != b.getPrice() ? Double.compare(a.getPrice(), b.getPrice())
+                    : Integer.compare(ProductCatalog.parseId(a.getId()), ProductCatalog.parseId(b.getId())));
+            priceOk &= expected.equals(system.getProductsByPrice(0, ids.size() + 1));
+            ArrayList<Product> paged = new ArrayList<Product>(system.getProductsByPrice(0, 7));
+            while (paged.size() < ids.size()) {
+                Product last = paged.get(paged.size() - 1);
+                ArrayList<Product> page = system.getProductsByPriceAfter(last.getPrice(), last.getId(), 7);
+                if (page.isEmpty()) {
+                    break;
+                }
+                paged.addAll(page);
+            }
+            priceOk &= expected.equals(paged);
+
+            expected.sort((a, b) -> !a.getName().equals(b.getName()) ? a.getName().compareTo(b.getName())
+                    : Integer.compare(ProductCatalog.parseId(a.getId()), ProductCatalog.parseId(b.getId())));
+            nameOk &= expected.equals(system.getProductsByName(0, ids.size() + 1));
+            paged = new ArrayList<Product>(system.getProductsByName(0, 7));
+            while (paged.size() < ids.size()) {
+                Product last = paged.get(paged.size() - 1);
+                ArrayList<Product> page = system.getProductsByNameAfter(last.getName(), last.getId(), 7);
+                if (page.isEmpty()) {
+                    break;
+                }
+                paged.addAll(page);
+            }
+            nameOk &= expected.equals(paged);
+        }
+        check("price listing is ordered after repricing and renaming", priceOk);
+        check("name listing is ordered after repricing and renaming", nameOk);
+    }
+
+    /**
+     * Restored rating counts may add up to more than an int holds; the count and the
+     * average must still be exact.
+     */
+    private static void ratingsPastIntRange() {
+        Product product = new Product("Popular", "100", 1.0, 1, Product.Category.GENERAL, 0.0);
+        product.setRatingCount(5, Integer.MAX_VALUE);
+        product.setRatingCount(4, Integer.MAX_VALUE);
+        product.setRatings(3);
+        check("rating count past the int range", product.getRatingCount() == 2L * Integer.MAX_VALUE + 1);
+        double average = (9.0 * Integer.MAX_VALUE + 3) / (2.0 * Integer.MAX_VALUE + 1);
+        check("average rating past the int range", Math.abs(product.getAverageRating() - average) < 1e-9);
+        product.setRatingCount(5, 0);
+        product.setRatingCount(4, 1);
+        check("lowering restored counts lowers the total", product.getRatingCount() == 2 && product.getAverageRating() == 3.5);
+    }
+
+    /**
+     * Ratings given at the same time are all counted.
+     */
+    private static void concurrentRatings() throws InterruptedException {
+        Product product = new Product("Rated", "101", 1.0, 1, Product.Category.GENERAL, 0.0);
+        ArrayList<Thread> raters = new ArrayList<Thread>();
+        for (int t = 0; t < 8; t++) {
+            int rating = 1 + t % 5;
+            raters.add(new Thread(() -> {
+                for (int i = 0; i < 50000; i++) {
+                    product.setRatings(rating);
+                }
+            }));
+        }
+        for (Thread rater : raters) {
+            rater.start();
+        }
+        for (Thread rater : raters) {
+            rater.join();
+        }
+        // Two raters each gave 1, 2 and 3 stars, one each gave 4 and 5
+        double average = (2 * (1 + 2 + 3) + 4 + 5) / 8.0;
+        check("concurrent ratings are all counted", product.getRatingCount() == 8 * 50000
+                && product.getAverageRating() == average);
+    }
+
+    /**
+     * @return cart - A cart with the given number of lines, one unit each, and no owner
+     */
+    private static Cart cartWith(int lines) {
+        Cart cart = new Cart();
+        for (int i = 0; i < lines; i++) {
+            cart.add(new Product("Widget " + i, Integer.toString(700 + i), 1.0, 1, Product.Category.GENERAL, 0.0), 0, 1);
+        }
+        return cart;
+    }
+
+    private static long replayCount(Path file) throws IOException {
+        try (OrderJournal journal = new OrderJournal(file)) {
+            return journal.replay(r -> { });
+        }
+    }
+
+    private static void flipByte(Path file, long position) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer b = ByteBuffer.allocate(1);
+            channel.read(b, position);
+            b.put(0, (byte) ~b.get(0));
+            channel.write(b.rewind(), position);
+        }
+    }
+
+    /**
+     * @return count - Number of this process's open file descriptors on the file, or 0 where that cannot be seen
+     */
+    private static int openDescriptors(Path file) throws IOException {
+        Path fds = Path.of("/proc/self/fd");
+        if (!Files.isDirectory(fds)) {
+            return 0;
+        }
+        int count = 0;
+        try (var links = Files.list(fds)) {
+            for (Path fd : (Iterable<Path>) links::iterator) {
+                try {
+                    if (Files.readSymbolicLink(fd).equals(file.toAbsolutePath())) {
+                        count++;
+                    }
+                } catch (IOException e) {
+                    // The descriptor listing itself, closed by now
+                }
+            }
+        }
+        return count;
+    }
+
+    private static void check(String what, boolean ok) {
+        System.out.println((ok ? "ok     " : "FAILED ") + what);
+        if (!ok) {
+            failures++;
+        }
+    }
+}
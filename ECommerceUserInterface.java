@@ -1,3 +1,4 @@
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Scanner;
 
@@ -7,8 +8,31 @@ public class ECommerceUserInterface
 {
 	public static void main(String[] args)
 	{
-		// Create the system
-		ECommerceSystem amazon = new ECommerceSystem();
+		// Create the system. Changes are only kept between runs when a journal is given, e.g.
+		//   java ECommerceUserInterface -journal ecommerce.journal
+		// and the system then picks up where the last run with that journal left off
+		String journalFile = null;
+		for (int i = 0; i + 1 < args.length; i++)
+		{
+			if (args[i].equals("-journal"))
+				journalFile = args[i + 1];
+		}
+		ECommerceSystem amazon;
+		if (journalFile == null)
+			amazon = new ECommerceSystem("products.txt");
+		else
+		{
+			try
+			{
+				amazon = new ECommerceSystem("products.txt", journalFile);
+			}
+			catch (JournalMismatchException | UncheckedIOException e)
+			{
+				System.out.println(e.getMessage());
+				System.exit(1);
+				return;
+			}
+		}
 
 		Scanner scanner = new Scanner(System.in);
 		System.out.print(">");
@@ -24,7 +48,7 @@ public class ECommerceUserInterface
 				continue;
 			}
 			else if (action.equalsIgnoreCase("Q") || action.equalsIgnoreCase("QUIT"))
-				return;
+				break;
 
 			else if (action.equalsIgnoreCase("PRODS"))	// List all products for sale
 			{
@@ -307,7 +331,7 @@ public class ECommerceUserInterface
 				}
 				try {
 					System.out.println(amazon.orderItems(customerId));
-				} catch (UnknownCustomerException e) {
+				} catch (UnknownCustomerException | NoStockException e) {
 					System.out.println(e.getMessage());
 				}
 				
@@ -391,7 +415,7 @@ public class ECommerceUserInterface
 			}
 			System.out.print("\n>");
 		}
-	
+		amazon.closeJournal();	// Writes out anything still buffered on quit or end of input
 	}
 
 }
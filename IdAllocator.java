@@ -0,0 +1,112 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * class IdAllocator hands out unique numeric IDs (order numbers, customer IDs, product IDs)
+ * to many threads without making them contend.
+ *
+ * IDs are longs, so they do not run out. Each thread leases a block of consecutive IDs
+ * from a shared counter and hands them out from its block without any synchronization,
+ * touching the shared counter once per block. IDs are therefore unique, and roughly but
+ * not strictly in the order they were handed out; a single thread gets consecutive IDs.
+ *
+ * Several processes can share an ID space without talking to each other by giving each a
+ * different node number: the blocks are striped across the nodes, so node k only ever
+ * leases the k-th block of every group of nodes blocks.
+ */
+public class IdAllocator {
+    private static final int BLOCK = 64;
+
+    private final long first;
+    private final int nodes;
+    private final int node;
+    private final AtomicLong nextBlock = new AtomicLong();  // Counts this node's blocks
+    private final AtomicLong floor;     // No ID below this is handed out any more, see advancePast()
+    private final ThreadLocal<Lease> lease = ThreadLocal.withInitial(Lease::new);
+
+    /**
+     * Constructs an allocator for a single process.
+     * @param first - First ID to hand out
+     */
+    public IdAllocator(long first) {
+        this(first, 0, 1);
+    }
+
+    /**
+     * Constructs an allocator for one of several processes sharing an ID space.
+     * @param first - First ID of the shared space
+     * @param node - This process's node number, 0 to nodes - 1
+     * @param nodes - Number of processes sharing the space
+     */
+    public IdAllocator(long first, int node, int nodes) {
+        if (nodes < 1 || node < 0 || node >= nodes) {
+            throw new IllegalArgumentException("Node " + node + " is not one of " + nodes + " nodes");
+        }
+        this.first = first;
+        this.node = node;
+        this.nodes = nodes;
+        this.floor = new AtomicLong(first);
+    }
+
+    /**
+     * @return id - A new ID, never handed out before by this allocator
+     */
+    public long next() {
+        Lease l = lease.get();
+        long min = floor.get();
+        if (l.next < min) {
+            l.next = min;   // Skips IDs that advancePast() said are in use; the rest of the block is still ours
+        }
+        while (l.next >= l.end) {
+            long block = nextBlock.getAndIncrement() * nodes + node;
+            l.end = first + (block + 1) * BLOCK;
+            l.next = Math.max(first + block * BLOCK, floor.get());
+        }
+        return l.next++;
+    }
+
+    /**
+     * Makes sure every ID handed out from now on is greater than id, e.g. after IDs were
+     * read back from a journal or a saved catalog. It only raises a shared floor and takes
+     * no lock, so it is cheap enough to call for every replayed record. Threads see the
+     * floor the next time they hand out an ID and skip to it within the block they hold,
+     * so IDs read back in order are continued without a gap.
+     * @param id - An ID already in use
+     */
+    public void advancePast(long id) {
+        if (id < first || id < floor.get()) {
+            return;     // Already past it
+        }
+        floor.accumulateAndGet(id + 1, Math::max);
+        long block = Math.floorDiv(id + 1 - first, BLOCK);
+        // The next block leased is the one holding id + 1, if it is this node's, else this node's next one
+        nextBlock.accumulateAndGet(Math.floorDiv(block - node + nodes - 1, nodes), Math::max);
+    }
+
+    /**
+     * Parses an ID without allocating.
+     * @param id - ID as a string
+     * @return id - The numeric ID, or -1 if the string is not a non-negative long
+     */
+    public static long parse(String id) {
+        if (id == null || id.isEmpty() || id.length() > 18) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = 0; i < id.length(); i++) {
+            char c = id.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    /**
+     * The block of IDs a thread is handing out: next up to, but not including, end.
+     */
+    private static class Lease {
+        long next;
+        long end;
+    }
+}
@@ -0,0 +1,79 @@
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * class OrderCounters counts how many times each product has been ordered.
+ *
+ * Every product gets its own LongAdder, a striped counter of primitive longs, so
+ * threads ordering the same product increment different cells instead of fighting
+ * over one value, and no Integer is boxed per order. Ordering never takes a lock.
+ *
+ * Ranking is left to a BestsellerBoard, which is brought up to date only when it is
+ * read. A counter that changed since the last drain is queued once as dirty, so a
+ * drain only looks at products ordered since the previous one. Counts read from a
+ * drained board include every order placed before the drain started.
+ */
+public class OrderCounters {
+    private ConcurrentHashMap<Product, Counter> counters;
+    private ConcurrentLinkedQueue<Counter> dirty;
+
+    /**
+     * Constructs counters with no orders recorded.
+     */
+    public OrderCounters() {
+        counters = new ConcurrentHashMap<Product, Counter>();
+        dirty = new ConcurrentLinkedQueue<Counter>();
+    }
+
+    /**
+     * Records orders of a product.
+     * @param product - Product that was ordered
+     * @param times - Number of new orders, must be positive
+     */
+    public void record(Product product, int times) {
+        Counter c = counters.get(product);
+        if (c == null) {
+            c = counters.computeIfAbsent(product, Counter::new);
+        }
+        c.count.add(times);
+        if (!c.dirty.get() && c.dirty.compareAndSet(false, true)) {
+            dirty.add(c);
+        }
+    }
+
+    /**
+     * @param product - A product
+     * @return count - Number of times the product has been ordered
+     */
+    public long count(Product product) {
+        Counter c = counters.get(product);
+        return c == null ? 0 : c.count.sum();
+    }
+
+    /**
+     * Brings a board up to date with every counter changed since the last drain.
+     * @param board - Board to update
+     */
+    public synchronized void drainTo(BestsellerBoard board) {
+        Counter c;
+        while ((c = dirty.poll()) != null) {
+            c.dirty.set(false);     // Cleared before summing, so a later order queues the counter again
+            board.set(c.product, (int) Math.min(Integer.MAX_VALUE, c.count.sum()));
+        }
+    }
+
+    /**
+     * The order count of one product and whether it is waiting to be drained.
+     */
+    private static class Counter {
+        final Product product;
+        final LongAdder count = new LongAdder();
+        final AtomicBoolean dirty = new AtomicBoolean();
+
+        Counter(Product product) {
+            this.product = product;
+        }
+    }
+}
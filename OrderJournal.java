@@ -0,0 +1,374 @@
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * class OrderJournal is an append-only log of the changes made to an ECommerceSystem,
+ * replayed at startup to rebuild the state that would otherwise be lost on restart.
+ *
+ * Each record is written as its payload length, a CRC32 of the payload and the
+ * payload itself: a type byte followed by the record's fields. A crash can leave a
+ * partly written record at the end of the file; replay stops at the first record
+ * that is incomplete or fails its checksum and cuts the file back to the last good
+ * record.
+ *
+ * commit() returns only once the record is on disk (written and forced). It is
+ * append() followed by sync(): append() either adds the record to the journal or
+ * throws having added nothing, and once it has returned the record will reach the
+ * disk unless writing fails, even if the caller stops waiting. Forcing
+ * is expensive, so concurrent commits are grouped: records are appended to a shared
+ * buffer, and whichever committer finds no write in progress becomes the leader,
+ * writes everything buffered so far with a single force and wakes the others. While
+ * it is forcing, newly committed records collect in the buffer for the next leader.
+ * Records reach the file in the order they were committed.
+ */
+public class OrderJournal implements Closeable {
+    private final FileChannel channel;
+    private byte[] pending = new byte[1 << 16];     // Records committed but not yet written
+    private int pendingLength;
+    private byte[] spare = new byte[1 << 16];       // Buffer being written by the leader
+    private long committed;     // Number of records appended to pending, ever
+    private long durable;       // Number of records known to be on disk
+    private boolean writing;    // True while a leader is writing and forcing
+    private IOException failure;
+    private long syncs;
+    private final CRC32 crc = new CRC32();
+
+    /**
+     * Opens a journal file, creating it if it does not exist. Call replay() before
+     * committing new records.
+     * @param file - Journal file
+     * @throws IOException - If the file cannot be opened
+     */
+    public OrderJournal(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channel.position(channel.size());
+    }
+
+    /**
+     * Reads every record in the journal, in the order they were committed, and
+     * leaves the journal positioned after the last good record.
+     * @param apply - Called with a Reader positioned on each record in turn
+     * @return records - Number of records replayed
+     * @throws IOException - If the file cannot be read
+     */
+    public synchronized long replay(Consumer<Reader> apply) throws IOException {
+        long good = 0;      // End of the last good record
+        long records = 0;
+        long size = channel.size();
+        channel.position(0);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 1 << 16));
+        byte[] payload = new byte[256];
+        Reader reader = new Reader();
+        while (true) {
+            int length;
+            int checksum;
+            try {
+                length = in.readInt();
+                checksum = in.readInt();
+                if (length <= 0 || length > size - good - 8) {
+                    break;      // Torn or corrupt length
+                }
+                if (payload.length < length) {
+                    payload = new byte[Math.max(length, payload.length * 2)];
+                }
+                in.readFully(payload, 0, length);
+            } catch (EOFException e) {
+                break;
+            }
+            crc.reset();
+            crc.update(payload, 0, length);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            reader.reset(ByteBuffer.wrap(payload, 0, length));
+            apply.accept(reader);
+            good += 8 + length;
+            records++;
+        }
+        if (size > good) {
+            channel.truncate(good);     // Drops a record cut short by a crash
+        }
+        channel.position(good);
+        committed = records;
+        durable = records;
+        return records;
+    }
+
+    /**
+     * Appends one record and waits until it is on disk.
+     * @param record - Record to append
+     * @throws UncheckedIOException - If the journal cannot be written; the record may or may not be on disk
+     */
+    public void commit(Record record) {
+        sync(append(record));
+    }
+
+    /**
+     * Appends records, which reach the file together and in order, and waits until
+     * they are on disk.
+     * @param records - Records to append
+     * @throws UncheckedIOException - If the journal cannot be written; the records may or may not be on disk
+     */
+    public void commit(List<Record> records) {
+        sync(append(records));
+    }
+
+    /**
+     * Appends one record without waiting for it to reach the disk.
+     * @param record - Record to append
+     * @return ticket - Pass to sync() to wait until the record is on disk
+     * @throws UncheckedIOException - If the journal failed earlier; nothing was appended
+     */
+    public long append(Record record) {
+        return append(Collections.singletonList(record));
+    }
+
+    /**
+     * Appends records, which reach the file together and in order, without waiting for
+     * them to reach the disk.
+     * @param records - Records to append
+     * @return ticket - Pass to sync() to wait until the records are on disk
+     * @throws UncheckedIOException - If the journal failed earlier; nothing was appended
+     */
+    public synchronized long append(List<Record> records) {
+        checkFailure();
+        for (Record r : records) {
+            write(r);
+        }
+        committed += records.size();
+        return committed;
+    }
+
+    /**
+     * Waits until appended records are on disk. An interrupt does not stop the wait; the
+     * thread's interrupt status is set again when it returns.
+     * @param ticket - Returned by append()
+     * @throws UncheckedIOException - If the journal cannot be written; the records may or may not be on disk
+     */
+    public void sync(long ticket) {
+        awaitDurable(ticket);
+    }
+
+    /**
+     * @return syncs - Number of times the journal has been forced to disk, which is less
+     * than the number of commits when commits were grouped
+     */
+    public synchronized long getSyncs() {
+        return syncs;
+    }
+
+    /**
+     * Writes out anything still buffered and closes the file.
+     * @throws IOException - If the file cannot be written or closed
+     */
+    public void close() throws IOException {
+        long last;
+        synchronized (this) {
+            last = committed;
+        }
+        try {
+            awaitDurable(last);
+        } catch (UncheckedIOException e) {
+            // Reported to the committers already
+        }
+        channel.close();
+    }
+
+    private void write(Record r) {
+        int length = r.length;
+        int needed = pendingLength + 8 + length;
+        if (needed > pending.length) {
+            pending = Arrays.copyOf(pending, Math.max(needed, pending.length * 2));
+        }
+        crc.reset();
+        crc.update(r.bytes, 0, length);
+        ByteBuffer.wrap(pending, pendingLength, 8).putInt(length).putInt((int) crc.getValue());
+        System.arraycopy(r.bytes, 0, pending, pendingLength + 8, length);
+        pendingLength = needed;
+    }
+
+    /**
+     * Waits until the first target records are on disk, writing them itself if no other
+     * thread is writing.
+     */
+    private void awaitDurable(long target) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                byte[] batch;
+                int batchLength;
+                long batchEnd;
+                synchronized (this) {
+                    while (durable < target && writing && failure == null) {
+                        try {
+                            wait();
+                        } catch (InterruptedException e) {
+                            interrupted = true;     // Keeps waiting: the records are appended and will be written anyway
+                        }
+                    }
+                    if (durable >= target) {
+                        return;
+                    }
+                    checkFailure();
+                    // Become the leader: take everything buffered so far, including other threads' records
+                    writing = true;
+                    batch = pending;
+                    batchLength = pendingLength;
+                    batchEnd = committed;
+                    pending = spare;
+                    pendingLength = 0;
+                }
+                if (Thread.interrupted()) {
+                    interrupted = true;     // An interrupted thread's write would close the channel
+                }
+                IOException error = null;
+                try {   // Written without the lock, so other threads keep committing into the new buffer
+                    ByteBuffer out = ByteBuffer.wrap(batch, 0, batchLength);
+                    while (out.hasRemaining()) {
+                        channel.write(out);
+                    }
+                    channel.force(false);
+                } catch (IOException e) {
+                    error = e;
+                }
+                synchronized (this) {
+                    spare = batch;
+                    writing = false;
+                    if (error != null) {
+                        failure = error;    // Later commits fail too: the file may now end in a partial batch
+                    } else {
+                        durable = batchEnd;
+                        syncs++;
+                    }
+                    notifyAll();
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void checkFailure() {
+        if (failure != null) {
+            throw new UncheckedIOException("Journal cannot be written", failure);
+        }
+    }
+
+    /**
+     * One journal record being built: a type and its fields, in order.
+     */
+    public static class Record {
+        private byte[] bytes = new byte[64];
+        private int length;
+
+        /**
+         * Starts a record.
+         * @param type - Record type, chosen by the caller
+         */
+        public Record(int type) {
+            bytes[length++] = (byte) type;
+        }
+
+        /**
+         * @param s - Text field
+         * @return this - The record, so fields can be chained
+         */
+        public Record text(String s) {
+            byte[] utf = s.getBytes(StandardCharsets.UTF_8);
+            number(utf.length);
+            ensure(utf.length);
+            System.arraycopy(utf, 0, bytes, length, utf.length);
+            length += utf.length;
+            return this;
+        }
+
+        /**
+         * @param v - Whole number field
+         * @return this - The record, so fields can be chained
+         */
+        public Record number(int v) {
+            ensure(4);
+            ByteBuffer.wrap(bytes, length, 4).putInt(v);
+            length += 4;
+            return this;
+        }
+
+        /**
+         * @param v - Decimal number field
+         * @return this - The record, so fields can be chained
+         */
+        public Record decimal(double v) {
+            ensure(8);
+            ByteBuffer.wrap(bytes, length, 8).putDouble(v);
+            length += 8;
+            return this;
+        }
+
+        private void ensure(int n) {
+            if (length + n > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(length + n, bytes.length * 2));
+            }
+        }
+    }
+
+    /**
+     * Reads the fields of a replayed record, in the order they were written.
+     */
+    public static class Reader {
+        private ByteBuffer in;
+        private int type;
+
+        void reset(ByteBuffer payload) {
+            in = payload;
+            type = in.get();
+        }
+
+        /**
+         * @return type - The record's type
+         */
+        public int type() {
+            return type;
+        }
+
+        /**
+         * @return s - The next text field
+         */
+        public String text() {
+            int n = in.getInt();
+            String s = new String(in.array(), in.position(), n, StandardCharsets.UTF_8);
+            in.position(in.position() + n);
+            return s;
+        }
+
+        /**
+         * @return v - The next whole number field
+         */
+        public int number() {
+            return in.getInt();
+        }
+
+        /**
+         * @return v - The next decimal number field
+         */
+        public double decimal() {
+            return in.getDouble();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * class OrderStore holds a set of product orders indexed by order number.
+ *
+ * Orders are kept in a linked hash map, so finding and removing an order by its
+ * number take constant time while iteration still follows the order in which
+ * the orders were added.
+ *
+ * A secondary index maps each customer ID to that customer's orders (again in the
+ * order they were added), so one customer's orders can be listed without looking
+ * at anybody else's.
+ *
+ * All methods are synchronized so a store can be shared between threads. The
+ * listing methods return copies, which callers may iterate without holding a lock.
+ */
+public class OrderStore {
+    private Map<String, ProductOrder> orders;
+    private Map<String, LinkedHashMap<String, ProductOrder>> byCustomer;
+
+    /**
+     * Constructs an empty order store.
+     */
+    public OrderStore() {
+        orders = new LinkedHashMap<String, ProductOrder>();
+        byCustomer = new HashMap<String, LinkedHashMap<String, ProductOrder>>();
+    }
+
+    /**
+     * Adds an order to the store.
+     * @param order - Order to be added, its order number must not already be in the store
+     */
+    public synchronized void add(ProductOrder order) {
+        if (orders.putIfAbsent(order.getOrderNumber(), order) != null) {
+            throw new IllegalArgumentException("Order " + order.getOrderNumber() + " already stored");
+        }
+        LinkedHashMap<String, ProductOrder> custOrders = byCustomer.get(order.getCustomer().getId());
+        if (custOrders == null) {
+            custOrders = new LinkedHashMap<String, ProductOrder>();
+            byCustomer.put(order.getCustomer().getId(), custOrders);
+        }
+        custOrders.put(order.getOrderNumber(), order);
+    }
+
+    /**
+     * Adds a batch of orders to the store under one lock, so other threads see either
+     * none or all of them.
+     * @param batch - Orders to be added, none of their order numbers may already be in the store
+     */
+    public synchronized void addAll(Collection<ProductOrder> batch) {
+        for (ProductOrder order : batch) {
+            if (orders.containsKey(order.getOrderNumber())) {
+                throw new IllegalArgumentException("Order " + order.getOrderNumber() + " already stored");
+            }
+        }
+        for (ProductOrder order : batch) {
+            add(order);
+        }
+    }
+
+    /**
+     * @param orderNumber - Number of the order to be found
+     * @return order - The order with that number, or null if it is not in the store
+     */
+    public synchronized ProductOrder get(String orderNumber) {
+        return orders.get(orderNumber);
+    }
+
+    /**
+     * Removes an order from the store.
+     * @param orderNumber - Number of the order to be removed
+     * @return order - The removed order, or null if it was not in the store
+     */
+    public synchronized ProductOrder remove(String orderNumber) {
+        ProductOrder order = orders.remove(orderNumber);
+        if (order != null) {
+            LinkedHashMap<String, ProductOrder> custOrders = byCustomer.get(order.getCustomer().getId());
+            custOrders.remove(orderNumber);
+            if (custOrders.isEmpty()) {     // Drops the index entry once the customer has no orders left
+                byCustomer.remove(order.getCustomer().getId());
+            }
+        }
+        return order;
+    }
+
+    /**
+     * Removes an order after an action on it has succeeded, both under the store's lock,
+     * e.g. to journal the removal before anyone can see it. If the action throws, the
+     * order stays where it was.
+     * @param orderNumber - Number of the order to be removed
+     * @param before - Called with the order before it is removed; not called if there is no such order
+     * @return order - The removed order, or null if it was not in the store
+     */
+    public synchronized ProductOrder remove(String orderNumber, Consumer<ProductOrder> before) {
+        ProductOrder order = orders.get(orderNumber);
+        if (order == null) {
+            return null;
+        }
+        before.accept(order);
+        return remove(orderNumber);
+    }
+
+    /**
+     * @return size - Number of orders in the store
+     */
+    public synchronized int size() {
+        return orders.size();
+    }
+
+    /**
+     * @return orders - Copy of the stored orders, in the order they were added
+     */
+    public synchronized Collection<ProductOrder> getOrders() {
+        return new ArrayList<ProductOrder>(orders.values());
+    }
+
+    /**
+     * @param customerId - ID of a customer
+     * @return orders - Copy of the customer's orders, in the order they were added
+     */
+    public synchronized Collection<ProductOrder> getOrdersOf(String customerId) {
+        LinkedHashMap<String, ProductOrder> custOrders = byCustomer.get(customerId);
+        if (custOrders == null) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<ProductOrder>(custOrders.values());
+    }
+}
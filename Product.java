@@ -1,5 +1,6 @@
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 /**
  * class Product defines a product for sale by the system. 
@@ -9,6 +10,15 @@ import java.util.TreeMap;
  * Some products also have various options (e.g. size, color, format, style, ...). The options can affect
  * the stock count(s). In this generic class Product, product options are not used in get/set/reduce stockCount() methods  
  * 
+ * Each distinct option that has its own stock is a "variant". variantOf() maps an options string to a 
+ * variant slot and the stock of every slot is kept in a lock-free StockCounter. A plain Product has a 
+ * single variant, slot 0. Options are parsed into a variant once (when added to a cart or ordered) and
+ * the int variant is carried from then on, so later stock calls never look at the options string again.
+ * 
+ * Ratings are kept as a five-bucket histogram of counts plus a running sum and count of all ratings, so
+ * the average is read in constant time. The sum and count are two longs changed together under a small
+ * lock of their own, so the average is always read from a consistent pair and neither can overflow.
+ * 
  * Some products
  */
 public class Product
@@ -19,9 +29,11 @@ public class Product
 	private String id;
 	private Category category;
 	private double price;
-	private int stockCount;
-	private Map<Integer, Integer> ratings;
-	private double averageRating;
+	private StockCounter stock;
+	private AtomicIntegerArray ratings;	// ratings.get(r - 1) is the number of r star ratings
+	private final Object ratingLock = new Object();	// Guards ratingSum and ratingCount
+	private long ratingSum;				// Sum of all ratings
+	private long ratingCount;			// Number of ratings
 	
 	/**
 	 * Defualt constructor for object Product
@@ -31,9 +43,8 @@ public class Product
 		this.name = "Product";
 		this.id = "001";
 		this.category = Category.GENERAL;
-		this.stockCount = 0;
-		this.ratings = new TreeMap<Integer, Integer>();
-		this.averageRating = 0.0;
+		this.stock = new StockCounter(1);
+		this.ratings = new AtomicIntegerArray(5);
 	}
 	
 	/**
@@ -55,17 +66,29 @@ public class Product
 	 * @param averageRating - Average rating of the product
 	 */
 	public Product(String name, String id, double price, int stock, Category category, double averageRating)
+	{
+		this(name, id, price, category, averageRating, 1);
+		this.stock.set(0, stock);
+	}
+
+	/**
+	 * Constructs a Product object whose stock is split into several variants, all starting at 0.
+	 * Used by subclasses whose options (e.g. format, size) each have their own stock.
+	 * @param name - Product's name
+	 * @param id - Uniquely generated ID to represent product
+	 * @param price - Product's price
+	 * @param category - Product's category
+	 * @param averageRating - Average rating of the product
+	 * @param variants - Number of variants, i.e. separately stocked options
+	 */
+	protected Product(String name, String id, double price, Category category, double averageRating, int variants)
 	{
 		this.name = name;
 		this.id = id;
 		this.price = price;
-		this.stockCount = stock;
+		this.stock = new StockCounter(variants);
 		this.category = category;
-		this.ratings = new TreeMap<Integer, Integer>();
-		for(int i = 1; i <= 5; i++) {
-			ratings.put(i, 0);
-		}
-		this.averageRating = averageRating;
+		this.ratings = new AtomicIntegerArray(5);
 	}
 
 	/**
@@ -78,43 +101,153 @@ public class Product
 	{
 		return true;
 	}
+
+	/**
+	 * Maps product options to the variant slot that holds their stock. A plain Product has
+	 * one variant, so every option maps to slot 0. Subclasses with options override this.
+	 * @param productOptions - Format of product
+	 * @return variant - The variant slot, or -1 if the options are not valid for this product
+	 */
+	public int variantOf(String productOptions)
+	{
+		return 0;
+	}
+
+	/**
+	 * Maps a variant slot back to the options string it stands for. The strings returned are shared
+	 * constants, so calling this allocates nothing.
+	 * @param variant - A variant slot returned by variantOf()
+	 * @return productOptions - The options for that variant (null for a plain Product)
+	 */
+	public String optionsOf(int variant)
+	{
+		return null;
+	}
+
+	/**
+	 * @param variant - A variant slot returned by variantOf()
+	 * @return stockCount - Number of items of that variant in stock
+	 */
+	public int getVariantStock(int variant)
+	{
+		return stock.get(variant);
+	}
+
+	/**
+	 * @return stock - The lock-free counter holding the stock of each variant of this product
+	 */
+	protected StockCounter getStock()
+	{
+		return stock;
+	}
+
+	/**
+	 * Atomically takes units of the given variant out of stock, but only if enough are available.
+	 * Never blocks and never takes the stock below zero.
+	 * @param productOptions - Format of product
+	 * @param units - Number of units wanted
+	 * @return boolean - True if the units were reserved, false if there was not enough stock
+	 */
+	public boolean tryReserveStock(String productOptions, int units)
+	{
+		int variant = variantOf(productOptions);
+		if (variant < 0) {
+			return false;
+		}
+		return tryReserveStock(variant, units);
+	}
+
+	/**
+	 * Same as tryReserveStock(String, int) for options that have already been parsed.
+	 * @param variant - A variant slot returned by variantOf()
+	 * @param units - Number of units wanted
+	 * @return boolean - True if the units were reserved, false if there was not enough stock
+	 */
+	public boolean tryReserveStock(int variant, int units)
+	{
+		return stock.tryReserve(variant, units);
+	}
+
+	/**
+	 * Atomically puts units of the given variant back into stock, e.g. to undo tryReserveStock().
+	 * @param productOptions - Format of product
+	 * @param units - Number of units to return
+	 */
+	public void releaseStock(String productOptions, int units)
+	{
+		int variant = variantOf(productOptions);
+		if (variant >= 0) {
+			releaseStock(variant, units);
+		}
+	}
+
+	/**
+	 * Same as releaseStock(String, int) for options that have already been parsed.
+	 * @param variant - A variant slot returned by variantOf()
+	 * @param units - Number of units to return
+	 */
+	public void releaseStock(int variant, int units)
+	{
+		stock.release(variant, units);
+	}
 	/**
 	 * @return ratings - A Map of a ratings, where the key is the rating (e.g. 1,2,3,4,5) and the
-	 * value is the amount of times the product has been rated that rating.
+	 * value is the amount of times the product has been rated that rating. The map is a snapshot;
+	 * changing it does not change the product's ratings.
 	 */
 	public Map<Integer, Integer> getRatings() {
-		return ratings;
+		Map<Integer, Integer> snapshot = new TreeMap<Integer, Integer>();
+		for (int r = 1; r <= 5; r++) {
+			snapshot.put(r, ratings.get(r - 1));
+		}
+		return snapshot;
 	}
 	/**
 	 * Increases the rating amount by 1 of given rating
 	 * @param rating - A rating between 1 and 5
 	 */
 	public void setRatings(int rating) {
-		ratings.put(rating, ratings.get(rating)+1);
+		synchronized (ratingLock) {
+			ratings.incrementAndGet(rating - 1);
+			ratingSum += rating;
+			ratingCount++;
+		}
+	}
+
+	/**
+	 * Sets the number of times the product has been given a rating, e.g. when restoring saved ratings
+	 * @param rating - A rating between 1 and 5
+	 * @param count - Number of times the product was given that rating
+	 */
+	public void setRatingCount(int rating, int count) {
+		synchronized (ratingLock) {
+			long delta = (long) count - ratings.getAndSet(rating - 1, count);
+			ratingSum += rating * delta;
+			ratingCount += delta;
+		}
 	}
 
 	/**
-	 * Calculates the average rating of product
-	 * @return averageRating - The average rating of the product.
+	 * @return ratingCount - Number of times the product has been rated
 	 */
-	public double getAverageRating() {
-		int total = 0;
-		int count = 0;
-		for (int rate: ratings.keySet()) {
-			total += rate * ratings.get(rate);
-			count += ratings.get(rate);
+	public long getRatingCount() {
+		synchronized (ratingLock) {
+			return ratingCount;
 		}
-		averageRating = (double)total/count;
-		return averageRating;
 	}
 
 	/**
-	 * @param averageRating - The average rating of the product.
+	 * @return averageRating - The average rating of the product, or 0.0 if it has not been rated.
 	 */
-	public void setAverageRating(double averageRating) {
-		this.averageRating = averageRating;
+	public double getAverageRating() {
+		synchronized (ratingLock) {
+			if (ratingCount == 0) {
+				return 0.0;
+			}
+			return (double) ratingSum / ratingCount;
+		}
 	}
-	
+
 	/**
 	 * @return category - The category the product is in (e.g. General, Clothing, Books, Furniture, Computer, Shoes).
 	 */
@@ -179,7 +312,7 @@ public class Product
 	 */
 	public int getStockCount(String productOptions)
 	{
-		return stockCount;
+		return stock.get(0);
 	}
 
 	/**
@@ -190,7 +323,7 @@ public class Product
 	 */
 	public void setStockCount(int stockCount, String productOptions)
 	{
-		this.stockCount = stockCount;
+		stock.set(0, stockCount);
 	}
 
 	/**
@@ -200,7 +333,7 @@ public class Product
 	 */
 	public void reduceStockCount(String productOptions)
 	{
-		stockCount--;
+		stock.add(0, -1);
 	}
 	
 	/**
@@ -210,6 +343,16 @@ public class Product
 	{
 		System.out.printf("\nId: %-5s Category: %-9s Name: %-20s Price: %7.1f", id, category, name, price);
 	}
+
+	/**
+	 * Renders the same information as print() into a Renderer, for listings of many products.
+	 * @param out - Renderer the row is appended to
+	 */
+	public void render(Renderer out)
+	{
+		out.text("\nId: ").left(id, 5).text(" Category: ").left(category, 9).text(" Name: ").left(name, 20)
+			.text(" Price: ").oneDecimal(price, 7);
+	}
 	
 	/**
 	 * Two products are equal if they have the same ID. This method is inherited
@@ -222,4 +365,14 @@ public class Product
 		Product otherP = (Product) other;
 		return this.id.equals(otherP.id);
 	}
+
+	/**
+	 * Hashes the ID, to agree with equals(), as products are used as hash keys (e.g. by
+	 * OrderCounters and Cart). The ID must not change once the product is used as a key.
+	 * @return hash - Hash code of the product's ID
+	 */
+	public int hashCode()
+	{
+		return id.hashCode();
+	}
 }
@@ -0,0 +1,285 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * class ProductCatalog stores every product for sale, keyed by product ID.
+ *
+ * Product IDs are integers from a known first ID up, so the catalog is an array
+ * indexed by (id - firstId). Looking a product up is a direct array index rather
+ * than a walk down a tree of String keys. IDs come from an IdAllocator, which hands
+ * each thread a block of 64 at a time, so they are not consecutive: a block that
+ * was not used up leaves a gap of empty slots. Empty slots read as null, get()
+ * reports them as unknown and the iterator skips them; a gap costs one reference
+ * per missing ID.
+ *
+ * The public String-based methods of ECommerceSystem still take product IDs as
+ * strings; get(String) parses the digits in place and never throws for IDs that
+ * are not numeric, it simply reports them as unknown.
+ *
+ * Adding products is synchronized. Lookups take no lock: add() publishes the new
+ * array and product before the volatile slot count, so a reader that sees a slot
+ * in range also sees the product stored in it.
+ *
+ * The catalog also keeps every category's products in their own array, in ID
+ * order, so listing one category costs only that category's size. Category arrays
+ * are only appended to past their published size, or copied when a product has to
+ * go in the middle, so a list handed out by productsIn() never changes under its reader.
+ * Books are also indexed by author, see AuthorIndex.
+ *
+ * Price-ordered and name-ordered views of all products are kept up to date as
+ * products are added, so sorted listings read a page instead of sorting the
+ * catalog. A product's price and name must therefore be changed through
+ * reprice() and rename(), which move it in the views.
+ */
+public class ProductCatalog implements Iterable<Product> {
+    private final int firstId;
+    private volatile Product[] products;
+    private volatile int slots;     // Number of array slots in use, i.e. highest id - firstId + 1
+    private volatile int size;      // Number of products in the catalog
+    private final EnumMap<Product.Category, CategoryList> byCategory;
+    private final AuthorIndex authors = new AuthorIndex();
+    private final SortedView<Double> byPrice = new SortedView<Double>(Product::getPrice);
+    private final SortedView<String> byName = new SortedView<String>(Product::getName);
+
+    /**
+     * Constructs an empty catalog.
+     * @param firstId - Smallest product ID the catalog will hold
+     */
+    public ProductCatalog(int firstId) {
+        this.firstId = firstId;
+        this.products = new Product[16];
+        this.byCategory = new EnumMap<Product.Category, CategoryList>(Product.Category.class);
+        for (Product.Category c : Product.Category.values()) {
+            byCategory.put(c, new CategoryList());
+        }
+    }
+
+    /**
+     * Adds a product to the catalog.
+     * @param product - Product to be added, its ID must be a number not less than firstId
+     */
+    public synchronized void add(Product product) {
+        int id = parseId(product.getId());
+        if (id < firstId) {
+            throw new IllegalArgumentException("Product ID " + product.getId() + " is outside the catalog");
+        }
+        int slot = id - firstId;
+        Product[] arr = products;
+        if (slot >= arr.length) {
+            arr = Arrays.copyOf(arr, Math.max(slot + 1, arr.length * 2));
+        }
+        if (arr[slot] != null) {
+            throw new IllegalArgumentException("Product " + product.getId() + " already in catalog");
+        }
+        arr[slot] = product;
+        products = arr;
+        slots = Math.max(slots, slot + 1);
+        size++;
+        byCategory.get(product.getCategory()).add(product, id);
+        if (product instanceof Book) {
+            authors.add((Book) product);
+        }
+        byPrice.update(product);
+        byName.update(product);
+    }
+
+    /**
+     * Changes a product's price and moves it in the price-ordered view.
+     * @param product - A product in the catalog
+     * @param price - The new price
+     */
+    public synchronized void reprice(Product product, double price) {
+        product.setPrice(price);
+        byPrice.update(product);
+    }
+
+    /**
+     * Changes a product's name and moves it in the name-ordered view.
+     * @param product - A product in the catalog
+     * @param name - The new name
+     */
+    public synchronized void rename(Product product, String name) {
+        product.setName(name);
+        byName.update(product);
+    }
+
+    /**
+     * @param id - Product ID
+     * @return product - The product with the given ID, or null if there is none
+     */
+    public Product get(int id) {
+        int slot = id - firstId;
+        if (slot < 0 || slot >= slots) {    // Reads slots before products, see add()
+            return null;
+        }
+        return products[slot];
+    }
+
+    /**
+     * @param id - Product ID as a string
+     * @return product - The product with the given ID, or null if there is none
+     */
+    public Product get(String id) {
+        int intId = parseId(id);
+        if (intId < 0) {
+            return null;
+        }
+        return get(intId);
+    }
+
+    /**
+     * @param id - Product ID as a string
+     * @return boolean - True if the catalog holds a product with this ID, else false.
+     */
+    public boolean contains(String id) {
+        return get(id) != null;
+    }
+
+    /**
+     * @return size - Number of products in the catalog
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Lists the products in one category in increasing ID order. The list is a snapshot:
+     * products added later are not in it, and it cannot be modified.
+     * @param category - A product category
+     * @return products - The category's products
+     */
+    public List<Product> productsIn(Product.Category category) {
+        CategoryList list = byCategory.get(category);
+        final Product[] arr;
+        final int n;
+        synchronized (this) {
+            n = list.size;
+            arr = list.items;
+        }
+        return Collections.unmodifiableList(Arrays.asList(arr).subList(0, n));
+    }
+
+    /**
+     * @param category - A product category
+     * @return size - Number of products in the category
+     */
+    public int sizeOf(Product.Category category) {
+        return byCategory.get(category).size;
+    }
+
+    /**
+     * @param author - Author's name, matched ignoring case
+     * @return books - The author's books sorted by year, or an empty list if there are none
+     */
+    public ArrayList<Book> booksByAuthor(String author) {
+        return authors.booksBy(author);
+    }
+
+    /**
+     * @param prefix - Start of an author's name, matched ignoring case
+     * @return books - Books of every author whose name starts with prefix, by author and then by year
+     */
+    public ArrayList<Book> booksByAuthorPrefix(String prefix) {
+        return authors.booksByPrefix(prefix);
+    }
+
+    /**
+     * @return view - All products ordered by price, then by ID
+     */
+    public SortedView<Double> byPrice() {
+        return byPrice;
+    }
+
+    /**
+     * @return view - All products ordered by name, then by ID
+     */
+    public SortedView<String> byName() {
+        return byName;
+    }
+
+    /**
+     * Iterates over the products in increasing ID order. Products added after the
+     * iterator was created are not seen by it.
+     */
+    public Iterator<Product> iterator() {
+        final Product[] arr;
+        final int end;
+        synchronized (this) {
+            end = slots;
+            arr = products;
+        }
+        return new Iterator<Product>() {
+            private int next = advance(0);
+
+            private int advance(int slot) {
+                while (slot < end && arr[slot] == null) {
+                    slot++;
+                }
+                return slot;
+            }
+
+            public boolean hasNext() {
+                return next < end;
+            }
+
+            public Product next() {
+                if (next >= end) {
+                    throw new NoSuchElementException();
+                }
+                Product p = arr[next];
+                next = advance(next + 1);
+                return p;
+            }
+        };
+    }
+
+    /**
+     * The products of one category, in ID order. Only changed while holding the catalog's lock.
+     */
+    private static class CategoryList {
+        volatile Product[] items = new Product[16];
+        volatile int size;
+
+        void add(Product product, int id) {
+            Product[] arr = items;
+            int at = size;
+            while (at > 0 && parseId(arr[at - 1].getId()) > id) {   // IDs normally arrive in order
+                at--;
+            }
+            if (at < size || size == arr.length) {     // Never write inside a published list
+                Product[] copy = new Product[at < size ? Math.max(arr.length, size + 1) : arr.length * 2];
+                System.arraycopy(arr, 0, copy, 0, at);
+                System.arraycopy(arr, at, copy, at + 1, size - at);
+                arr = copy;
+            }
+            arr[at] = product;
+            items = arr;
+            size++;
+        }
+    }
+
+    /**
+     * Parses a product ID without allocating.
+     * @param id - Product ID as a string
+     * @return id - The numeric ID, or -1 if the string is not a non-negative int
+     */
+    static int parseId(String id) {
+        if (id == null || id.isEmpty() || id.length() > 10) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = 0; i < id.length(); i++) {
+            char c = id.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value > Integer.MAX_VALUE ? -1 : (int) value;
+    }
+}
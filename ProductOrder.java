@@ -4,12 +4,13 @@
  * The order number is generated by the system when a ProductOrder object is created.
  * 
  * Also stores any product options chosen by this customer (e.g. paperback book, certain size of a product etc)
+ * as the product's variant slot, parsed once when the order is created.
  */
 public class ProductOrder
 {
 	private String orderNumber;
 	private Product product;
-	private String productOptions;
+	private int variant;
 	private Customer customer;
 
 	/**
@@ -20,11 +21,23 @@ public class ProductOrder
 	 * @param productOptions - Format of the product ordered
 	 */
 	public ProductOrder(String orderNumber, Product product, Customer customer, String productOptions)
+	{
+		this(orderNumber, product, customer, product.variantOf(productOptions));
+	}
+
+	/**
+	 * Constructs a Product Order object from options that have already been parsed
+	 * @param orderNumber - Number that identifies a purchase
+	 * @param product - Product that is ordered
+	 * @param customer - Customer who ordered the product
+	 * @param variant - Variant slot of the format ordered, as returned by product.variantOf()
+	 */
+	public ProductOrder(String orderNumber, Product product, Customer customer, int variant)
 	{
 		this.orderNumber = orderNumber;
 		this.product = product;
 		this.customer = customer;
-		this.productOptions = productOptions;
+		this.variant = variant;
 	}
 
 	/**
@@ -59,6 +72,22 @@ public class ProductOrder
 		this.product = product;
 	}
 
+	/**
+	 * @return productOptions - Format of the product ordered
+	 */
+	public String getProductOptions()
+	{
+		return variant < 0 ? null : product.optionsOf(variant);
+	}
+
+	/**
+	 * @return variant - Variant slot of the format ordered
+	 */
+	public int getVariant()
+	{
+		return variant;
+	}
+
 	/**
 	 * @return customer - The customer who has ordered the product.
 	 */
@@ -84,12 +113,26 @@ public class ProductOrder
 	if (product.getName().equals("Book")) 
 	{
 		System.out.printf("\nOrder # %3s Customer Id: %3s Product Id: %3s Product Name: %12s Options: %8s", orderNumber, customer.getId(), product.getId(), product.getName(), 
-		productOptions);
+		getProductOptions());
 	} else {
 		System.out.printf("\nOrder # %3s Customer Id: %3s Product Id: %3s Product Name: %12s", orderNumber, customer.getId(), product.getId(), product.getName());
 	}
 		
 	}
+
+	/**
+	 * Renders the same information as print() into a Renderer, for listings of many orders.
+	 * @param out - Renderer the row is appended to
+	 */
+	public void render(Renderer out)
+	{
+		out.text("\nOrder # ").right(orderNumber, 3).text(" Customer Id: ").right(customer.getId(), 3)
+			.text(" Product Id: ").right(product.getId(), 3).text(" Product Name: ").right(product.getName(), 12);
+		if (product.getName().equals("Book")) 
+		{
+			out.text(" Options: ").right(getProductOptions(), 8);
+		}
+	}
 	/**
 	 * Checks if two ProductOrder objects are equal based on their orderNumber.
 	 * @param other - The other productOrder to be compared to this productOrder
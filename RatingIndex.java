@@ -0,0 +1,97 @@
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * class RatingIndex keeps the rated products of each category ordered by average
+ * rating, best first, and by product ID among equal averages.
+ *
+ * A product is indexed under the average it had when it was last updated, so
+ * update() must be called whenever its ratings change. Asking for the products of
+ * a category rated at least R walks the category from the top and stops at the
+ * first product rated below R, so it costs only the products it returns.
+ *
+ * Each product's move from its old position to its new one is done while holding
+ * that product's entry in a ConcurrentHashMap, so ratings of different products
+ * update the index in parallel and the last update of a product always wins.
+ */
+public class RatingIndex {
+    private EnumMap<Product.Category, ConcurrentSkipListSet<Entry>> byCategory;
+    private ConcurrentHashMap<Product, Entry> current;
+
+    /**
+     * Constructs an empty index.
+     */
+    public RatingIndex() {
+        byCategory = new EnumMap<Product.Category, ConcurrentSkipListSet<Entry>>(Product.Category.class);
+        for (Product.Category c : Product.Category.values()) {
+            byCategory.put(c, new ConcurrentSkipListSet<Entry>());
+        }
+        current = new ConcurrentHashMap<Product, Entry>();
+    }
+
+    /**
+     * Moves a product to the position of its current average rating. Unrated products
+     * are left out of the index.
+     * @param product - Product whose ratings changed
+     */
+    public void update(Product product) {
+        ConcurrentSkipListSet<Entry> set = byCategory.get(product.getCategory());
+        current.compute(product, (p, old) -> {
+            if (old != null) {
+                set.remove(old);
+            }
+            if (p.getRatingCount() == 0) {
+                return null;
+            }
+            Entry e = new Entry(p, p.getAverageRating());
+            set.add(e);
+            return e;
+        });
+    }
+
+    /**
+     * Lists the products of a category rated at least minRating, best first.
+     * @param category - A product category
+     * @param minRating - Lowest average rating to include
+     * @param offset - Number of matching products to skip
+     * @param limit - Maximum number of products to return
+     * @return products - The matching products
+     */
+    public ArrayList<Product> ratedAtLeast(Product.Category category, double minRating, int offset, int limit) {
+        ArrayList<Product> result = new ArrayList<Product>();
+        int skipped = 0;
+        for (Entry e : byCategory.get(category)) {
+            if (e.average < minRating || result.size() >= limit) {
+                break;
+            }
+            if (skipped < offset) {
+                skipped++;
+            } else {
+                result.add(e.product);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * A product and the average rating it is indexed under.
+     */
+    private static class Entry implements Comparable<Entry> {
+        final Product product;
+        final double average;
+        final int id;
+
+        Entry(Product product, double average) {
+            this.product = product;
+            this.average = average;
+            this.id = ProductCatalog.parseId(product.getId());
+        }
+
+        public int compareTo(Entry other) {
+            int c = Double.compare(other.average, average);     // Highest average first
+            return c != 0 ? c : Integer.compare(id, other.id);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.Charset;
+
+/**
+ * class Renderer formats listing rows into one reusable buffer and writes the buffer
+ * out in large chunks.
+ *
+ * It produces exactly the text of the printf column formats used by the print()
+ * methods: left(s, n) is %-ns, right(s, n) is %ns and oneDecimal(v, n) is %n.1f.
+ * Unlike printf it parses no format string per row and does not take the output
+ * stream's lock per row. Call flush() when the listing is done.
+ */
+public class Renderer {
+    private static final int FLUSH_AT = 1 << 16;
+
+    private final Writer out;
+    private final StringBuilder buf = new StringBuilder(FLUSH_AT + 256);
+    private char[] chunk = new char[FLUSH_AT + 256];
+
+    /**
+     * Constructs a renderer that writes to a Writer.
+     * @param out - Where the rendered text goes
+     */
+    public Renderer(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * Constructs a renderer that writes to a stream in the platform's default charset,
+     * e.g. new Renderer(System.out).
+     * @param out - Where the rendered text goes
+     */
+    public Renderer(OutputStream out) {
+        this(new OutputStreamWriter(out, Charset.defaultCharset()));
+    }
+
+    /**
+     * Appends text as it is.
+     * @param s - Text to append
+     * @return this - The renderer, so calls can be chained
+     */
+    public Renderer text(String s) {
+        buf.append(s);
+        return this;
+    }
+
+    /**
+     * Appends a value left-justified in a column, like %-ns.
+     * @param s - Value to append, "null" if null
+     * @param width - Minimum column width
+     * @return this - The renderer, so calls can be chained
+     */
+    public Renderer left(Object s, int width) {
+        int start = buf.length();
+        buf.append(s);
+        return pad(start + width);
+    }
+
+    /**
+     * Appends a number left-justified in a column, like %-ns.
+     * @param v - Number to append
+     * @param width - Minimum column width
+     * @return this - The renderer, so calls can be chained
+     */
+    public Renderer left(int v, int width) {
+        int start = buf.length();
+        buf.append(v);
+        return pad(start + width);
+    }
+
+    /**
+     * Appends a value right-justified in a column, like %ns.
+     * @param s - Value to append, "null" if null
+     * @param width - Minimum column width
+     * @return this - The renderer, so calls can be chained
+     */
+    public Renderer right(Object s, int width) {
+        String text = String.valueOf(s);
+        for (int i = text.length(); i < width; i++) {
+            buf.append(' ');
+        }
+        buf.append(text);
+        return this;
+    }
+
+    /**
+     * Appends a number with one decimal place right-justified in a column, like %n.1f.
+     * Rounds half up from the number's shortest decimal form, as Formatter does.
+     * @param v - Number to append
+     * @param width - Minimum column width
+     * @return this - The renderer, so calls can be chained
+     */
+    public Renderer oneDecimal(double v, int width) {
+        double abs = Math.abs(v);
+        long tenths = (long) Math.rint(abs * 10);
+        if (Double.isNaN(v) || abs >= 1e15 || (double) tenths / 10 != abs) {
+            // Not exactly some x.y, so round its decimal form the way Formatter does
+            String text = Double.isFinite(v) ? BigDecimal.valueOf(v).setScale(1, RoundingMode.HALF_UP).toPlainString()
+                    : String.format("%.1f", v);
+            return right(text, width);
+        }
+        boolean negative = Double.doubleToRawLongBits(v) < 0;
+        int length = negative ? 3 : 2;   // Sign, decimal point and tenths digit
+        for (long whole = tenths / 10; ; whole /= 10) {
+            length++;
+            if (whole < 10) {
+                break;
+            }
+        }
+        for (int i = length; i < width; i++) {
+            buf.append(' ');
+        }
+        if (negative) {
+            buf.append('-');
+        }
+        buf.append(tenths / 10).append('.').append((char) ('0' + tenths % 10));
+        return this;
+    }
+
+    /**
+     * Ends a row; writes the buffer out once it is large.
+     * @return this - The renderer, so calls can be chained
+     */
+    public Renderer endRow() {
+        if (buf.length() >= FLUSH_AT) {
+            drain();
+        }
+        return this;
+    }
+
+    /**
+     * Writes out everything rendered so far.
+     */
+    public void flush() {
+        drain();
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Renderer pad(int end) {
+        for (int i = buf.length(); i < end; i++) {
+            buf.append(' ');
+        }
+        return this;
+    }
+
+    private void drain() {
+        int n = buf.length();
+        if (chunk.length < n) {
+            chunk = new char[n];
+        }
+        buf.getChars(0, n, chunk, 0);
+        buf.setLength(0);
+        try {
+            out.write(chunk, 0, n);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,177 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * class ShippedOrderArchive holds every order that has been shipped.
+ *
+ * Shipped orders never change, and there are many more of them than of current
+ * orders, so they are kept as fixed-width 24-byte records in direct (off-heap)
+ * buffers rather than as ProductOrder objects: order number and customer ID as longs,
+ * product ID as an int, and the variant. Only the most recently shipped orders are also kept as
+ * objects (the hot tier). Older orders are turned back into ProductOrders, looking
+ * their product and customer up by ID, as they are read, and are garbage as soon as
+ * the reader is done with them.
+ *
+ * Each customer has an int list of the positions of their records, so one customer's
+ * orders are read without looking at anybody else's and a page of them is found by
+ * position.
+ *
+ * Order numbers, customer IDs and product IDs must be numeric, as the generated ones are.
+ * Adding is synchronized. Records are never changed once written, so readers only take
+ * the lock to see how many records there are and then read without it.
+ */
+public class ShippedOrderArchive {
+    private static final int RECORD_BYTES = 24;
+    private static final int SEGMENT_RECORDS = 1 << 16;
+    private static final int HOT_ORDERS = 1024;
+
+    private final Function<String, Product> products;
+    private final Function<String, Customer> customers;
+    private volatile ByteBuffer[] segments = new ByteBuffer[0];
+    private int size;
+    private final AtomicReferenceArray<ProductOrder> hot = new AtomicReferenceArray<ProductOrder>(HOT_ORDERS);
+    private final HashMap<String, IntList> byCustomer = new HashMap<String, IntList>();
+
+    /**
+     * Constructs an empty archive.
+     * @param products - Finds a product by ID, used to turn records back into orders
+     * @param customers - Finds a customer by ID, used to turn records back into orders
+     */
+    public ShippedOrderArchive(Function<String, Product> products, Function<String, Customer> customers) {
+        this.products = products;
+        this.customers = customers;
+    }
+
+    /**
+     * Archives a shipped order.
+     * @param order - Order to be archived
+     */
+    public synchronized void add(ProductOrder order) {
+        long orderNumber = IdAllocator.parse(order.getOrderNumber());
+        long customerId = IdAllocator.parse(order.getCustomer().getId());
+        int productId = ProductCatalog.parseId(order.getProduct().getId());
+        if (orderNumber < 0 || customerId < 0 || productId < 0) {
+            throw new IllegalArgumentException("Order " + order.getOrderNumber() + " has an ID that is not a number");
+        }
+        int segment = size / SEGMENT_RECORDS;
+        if (segment == segments.length) {
+            ByteBuffer[] grown = Arrays.copyOf(segments, segment + 1);
+            grown[segment] = ByteBuffer.allocateDirect(SEGMENT_RECORDS * RECORD_BYTES);
+            segments = grown;
+        }
+        ByteBuffer buffer = segments[segment];
+        int at = (size % SEGMENT_RECORDS) * RECORD_BYTES;
+        buffer.putLong(at, orderNumber);
+        buffer.putLong(at + 8, customerId);
+        buffer.putInt(at + 16, productId);
+        buffer.putInt(at + 20, order.getVariant());
+        hot.set(size % HOT_ORDERS, order);
+
+        IntList positions = byCustomer.get(order.getCustomer().getId());
+        if (positions == null) {
+            positions = new IntList();
+            byCustomer.put(order.getCustomer().getId(), positions);
+        }
+        positions.add(size);
+        size++;
+    }
+
+    /**
+     * @return size - Number of shipped orders
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @param customerId - ID of a customer
+     * @return count - Number of the customer's shipped orders
+     */
+    public synchronized int countOf(String customerId) {
+        IntList positions = byCustomer.get(customerId);
+        return positions == null ? 0 : positions.size;
+    }
+
+    /**
+     * Passes every shipped order, in the order they were shipped, to an action.
+     * @param action - Called with each order
+     */
+    public void forEach(Consumer<ProductOrder> action) {
+        int end = size();
+        for (int i = 0; i < end; i++) {
+            action.accept(read(i));
+        }
+    }
+
+    /**
+     * Passes a customer's shipped orders, in the order they were shipped, to an action.
+     * @param customerId - ID of the customer
+     * @param action - Called with each order
+     */
+    public void forEachOf(String customerId, Consumer<ProductOrder> action) {
+        for (int position : positionsOf(customerId, 0, Integer.MAX_VALUE)) {
+            action.accept(read(position));
+        }
+    }
+
+    /**
+     * Adds one page of a customer's shipped orders to a list.
+     * @param customerId - ID of the customer
+     * @param offset - Number of the customer's shipped orders to skip
+     * @param limit - Maximum number of orders to add
+     * @param page - List the orders are added to
+     */
+    public void addPageOf(String customerId, int offset, int limit, List<ProductOrder> page) {
+        for (int position : positionsOf(customerId, offset, limit)) {
+            page.add(read(position));
+        }
+    }
+
+    /**
+     * Copies up to limit of a customer's record positions, starting at offset.
+     */
+    private synchronized int[] positionsOf(String customerId, int offset, int limit) {
+        IntList positions = byCustomer.get(customerId);
+        if (positions == null || offset >= positions.size) {
+            return new int[0];
+        }
+        int end = (int) Math.min(positions.size, (long) offset + limit);
+        return Arrays.copyOfRange(positions.items, offset, end);
+    }
+
+    /**
+     * Returns the order at a position, from the hot tier if it is still there.
+     */
+    private ProductOrder read(int position) {
+        ByteBuffer buffer = segments[position / SEGMENT_RECORDS];
+        int at = (position % SEGMENT_RECORDS) * RECORD_BYTES;
+        String orderNumber = Long.toString(buffer.getLong(at));
+        ProductOrder recent = hot.get(position % HOT_ORDERS);
+        if (recent != null && recent.getOrderNumber().equals(orderNumber)) {
+            return recent;
+        }
+        Customer customer = customers.apply(Long.toString(buffer.getLong(at + 8)));
+        Product product = products.apply(Integer.toString(buffer.getInt(at + 16)));
+        return new ProductOrder(orderNumber, product, customer, buffer.getInt(at + 20));
+    }
+
+    /**
+     * A growable list of ints.
+     */
+    private static class IntList {
+        int[] items = new int[4];
+        int size;
+
+        void add(int v) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+            }
+            items[size++] = v;
+        }
+    }
+}
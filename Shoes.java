@@ -7,16 +7,17 @@ public class Shoes extends Product{
   private int size;
   private String colour;
   private String productOptions;
-  private int black6stock;    // Variables representing stock for each size/colour combination
-  private int black7stock;
-  private int black8stock;
-  private int black9stock;
-  private int black10stock;
-  private int brown6stock;
-  private int brown7stock;
-  private int brown8stock;
-  private int brown9stock;
-  private int brown10stock;
+  // Stock for each size/colour combination is a variant slot in the inherited stock counter:
+  // Black sizes 6-10 use slots 0-4 and Brown sizes 6-10 use slots 5-9
+  private static final int VARIANTS = 10;
+  private static final int BROWN = 5;
+  private static final String[] OPTIONS = new String[VARIANTS];   // Options string of each slot, e.g. "6Black"
+  static {
+    for (int size = 6; size <= 10; size++) {
+      OPTIONS[size - 6] = size + "Black";
+      OPTIONS[BROWN + size - 6] = size + "Brown";
+    }
+  }
 
   /**
    * Constructs a Shoe object , subclass of product
@@ -27,7 +28,7 @@ public class Shoes extends Product{
    * @param productOptions - Size and colour of shoes
    */
   public Shoes(String name, String id, double price, int stock, String productOptions) {
-      super(name, id, price, 0, Product.Category.SHOES, 0.0);
+      super(name, id, price, Product.Category.SHOES, 0.0, VARIANTS);
       this.productOptions = productOptions;
       setSize(productOptions);    // Sets size based on productOptions
       setColour(productOptions);  // Sets colour based on productOptions
@@ -65,59 +66,83 @@ public class Shoes extends Product{
    */
   public boolean validOptions(String productOptions)
   {
-    for (int i = 6; i <= 10; i ++) { // Loops through all possible sizes
-        if (productOptions.equals(i + "Black") || productOptions.equals(i + "Brown")) {     //Checks in the formatting of productOptions
-            return true;
-        }
-    }
-    return false;
+    return variantOf(productOptions) >= 0;
   }
 
   /**
-   * Gets the stock count of this shoe based on the size and colour.
+   * Gets the stock count of this shoe based on the size and colour. Does not change the
+   * shoe's own size and colour, so it is safe to call from any number of threads.
    * @param productOptions - The size and colour of the shoe
-   * @return stockCount - Returns the corresponding variable to the productOption string given.
+   * @return stockCount - Returns the stock of the slot matching the productOption string given.
    */
   public int getStockCount(String productOptions) {
-    // Seperates productOptions to variables size and colour
-    // Checks for each possible combination to get the
-    // stock of the specified shoe
-    setSize(productOptions);
-    setColour(productOptions);
-    if(size == 6) {
-      if (colour.equals("Black")) {
-        return black6stock;
-      }else if (colour.equals("Brown")) {
-        return brown6stock;
-      }
-    }else if(size == 7) {
-      if (colour.equals("Black")) {
-        return black7stock;
-      }else if (colour.equals("Brown")) {
-        return brown7stock;
-      }
-    }else if(size == 8) {
-      if (colour.equals("Black")) {
-        return black8stock;
-      }else if (colour.equals("Brown")) {
-        return brown8stock;
-      }
-    }else if(size == 9) {
-      if (colour.equals("Black")) {
-        return black9stock;
-      }else if (colour.equals("Brown")) {
-        return brown9stock;
-      }
-    }else if(size == 10) {
-      if (colour.equals("Black")) {
-        return black10stock;
-      }else if (colour.equals("Brown")) {
-        return brown10stock;
-      }
+    int variant = variantOf(productOptions);
+    if (variant < 0) {
+      return 0;
     }
-    return 0;
+    return getStock().get(variant);
   }
-  
+
+  /**
+   * Maps productOptions (e.g. 6Black, 10Brown) to the variant slot holding its stock.
+   * Reads the characters in place: nothing is allocated and the shoe is not modified.
+   * @param productOptions - The size and colour of the shoe concatenated into one string.
+   * @return variant - The slot, or -1 if productOptions is not correctly formatted
+   */
+  public int variantOf(String productOptions) {
+    return parseVariant(productOptions);
+  }
+
+  /**
+   * Same as variantOf(), for checking options before a shoe exists.
+   * @param productOptions - The size and colour of the shoe concatenated into one string.
+   * @return variant - The slot, or -1 if productOptions is not correctly formatted
+   */
+  public static int parseVariant(String productOptions) {
+    if (productOptions == null) {
+      return -1;
+    }
+    int size;
+    int length = productOptions.length();
+    if (length == 6 && productOptions.charAt(0) >= '6' && productOptions.charAt(0) <= '9') {
+      size = productOptions.charAt(0) - '0';
+    } else if (length == 7 && productOptions.charAt(0) == '1' && productOptions.charAt(1) == '0') {   // Size 10
+      size = 10;
+    } else {
+      return -1;
+    }
+    if (productOptions.startsWith("Black", length - 5)) {
+      return size - 6;
+    } else if (productOptions.startsWith("Brown", length - 5)) {
+      return BROWN + size - 6;
+    }
+    return -1;
+  }
+
+  /**
+   * @param variant - A variant slot returned by variantOf()
+   * @return productOptions - The size and colour stored in that slot, e.g. "10Brown"
+   */
+  public String optionsOf(int variant) {
+    return OPTIONS[variant];
+  }
+
+  /**
+   * @param size - Size of shoe
+   * @param colour - Colour of shoe
+   * @return variant - The slot holding the stock of this size and colour, or -1 if there is none
+   */
+  private static int slotOf(int size, String colour) {
+    if (size < 6 || size > 10) {
+      return -1;
+    } else if (colour.equals("Black")) {
+      return size - 6;
+    } else if (colour.equals("Brown")) {
+      return BROWN + size - 6;
+    }
+    return -1;
+  }
+
   /**
    * Sets the stock of a specified shoe
    * @param stock - Amount of shoe
@@ -127,36 +152,9 @@ public class Shoes extends Product{
   public void setStockCount(int stock, int size, String colour) {
     // Uses size and colour to determine which type of shoe stock
     // to assign the stock to
-    if(size == 6) {
-      if (colour.equals("Black")) {
-        black6stock = stock;
-      }else if (colour.equals("Brown")) {
-        brown6stock = stock;
-      }
-    }else if(size == 7) {
-      if (colour.equals("Black")) {
-        black7stock = stock;
-      }else if (colour.equals("Brown")) {
-        brown7stock = stock;
-      }
-    }else if(size == 8) {
-      if (colour.equals("Black")) {
-        black8stock = stock;
-      }else if (colour.equals("Brown")) {
-        brown8stock = stock;
-      }
-    }else if(size == 9) {
-      if (colour.equals("Black")) {
-        black9stock = stock;
-      }else if (colour.equals("Brown")) {
-        brown9stock = stock;
-      }
-    }else if(size == 10) {
-      if (colour.equals("Black")) {
-        black10stock = stock;
-      }else if (colour.equals("Brown")) {
-        brown10stock = stock;
-      }
+    int variant = slotOf(size, colour);
+    if (variant >= 0) {
+      getStock().set(variant, stock);
     }
   }
 
@@ -165,38 +163,9 @@ public class Shoes extends Product{
    * @param productOptions - Size and colour of shoe
    */
   public void reduceStockCount(String productOptions) {
-    setSize(productOptions);    // Sets size based on given productOptions
-    setColour(productOptions);  // Sets colour based on given productOptions
-    if(size == 6) {
-      if (colour.equals("Black")) {
-        black6stock -= 1;
-      }else if (colour.equals("Brown")) {
-        brown6stock -= 1;
-      }
-    }else if(size == 7) {
-      if (colour.equals("Black")) {
-        black7stock -= 1;
-      }else if (colour.equals("Brown")) {
-        brown7stock -= 1;
-      }
-    }else if(size == 8) {
-      if (colour.equals("Black")) {
-        black8stock -= 1;
-      }else if (colour.equals("Brown")) {
-        brown8stock -= 1;
-      }
-    }else if(size == 9) {
-      if (colour.equals("Black")) {
-        black9stock -= 1;
-      }else if (colour.equals("Brown")) {
-        brown9stock -= 1;
-      }
-    }else if(size == 10) {
-      if (colour.equals("Black")) {
-        black10stock -= 1;
-      }else if (colour.equals("Brown")) {
-        brown10stock -= 1;
-      }
+    int variant = variantOf(productOptions);
+    if (variant >= 0) {
+      getStock().add(variant, -1);
     }
   }
 
@@ -208,4 +177,13 @@ public class Shoes extends Product{
     System.out.print("     ");
     System.out.printf("Size:%-5s Colour:%-5s Stock:%-5s", size, colour, getStockCount(productOptions));
   }
+
+  /**
+   * Renders the same information as print() into a Renderer
+   * @param out - Renderer the row is appended to
+   */
+  public void render(Renderer out) {
+    super.render(out);
+    out.text("     ").text("Size:").left(size, 5).text(" Colour:").left(colour, 5).text(" Stock:").left(getStockCount(productOptions), 5);
+  }
 }
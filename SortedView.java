@@ -0,0 +1,106 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Function;
+
+/**
+ * class SortedView keeps the catalog's products ordered by one key (e.g. price or
+ * name), and by product ID among equal keys, so a page of the ordered catalog can be
+ * read without sorting it.
+ *
+ * Each product is filed under the key it had when it was last added or updated, so
+ * update() must be called after its key changes. Changes are made while holding the
+ * catalog's lock; pages are read from a ConcurrentSkipListSet without locking. While a
+ * product is being moved it may briefly be missing from a page read at the same time.
+ *
+ * A page can be asked for by offset, which walks past the skipped products, or by
+ * cursor (the key and ID of the last product of the previous page), which starts
+ * right after it.
+ */
+public class SortedView<K extends Comparable<K>> {
+    private final Function<Product, K> keyOf;
+    private final ConcurrentSkipListSet<Entry<K>> entries;
+    private final HashMap<Product, Entry<K>> current;
+
+    /**
+     * Constructs an empty view.
+     * @param keyOf - Gives the key a product is ordered by
+     */
+    public SortedView(Function<Product, K> keyOf) {
+        this.keyOf = keyOf;
+        this.entries = new ConcurrentSkipListSet<Entry<K>>();
+        this.current = new HashMap<Product, Entry<K>>();
+    }
+
+    /**
+     * Adds a product to the view, or moves it to the position of its current key.
+     * @param product - Product to add or move
+     */
+    public void update(Product product) {
+        Entry<K> old = current.get(product);
+        if (old != null) {
+            entries.remove(old);
+        }
+        Entry<K> e = new Entry<K>(keyOf.apply(product), ProductCatalog.parseId(product.getId()), product);
+        current.put(product, e);
+        entries.add(e);
+    }
+
+    /**
+     * @param offset - Number of products to skip
+     * @param limit - Maximum number of products to return
+     * @return products - One page of products in order
+     */
+    public ArrayList<Product> page(int offset, int limit) {
+        ArrayList<Product> page = new ArrayList<Product>();
+        int skipped = 0;
+        for (Entry<K> e : entries) {
+            if (page.size() >= limit) {
+                break;
+            }
+            if (skipped < offset) {
+                skipped++;
+            } else {
+                page.add(e.product);
+            }
+        }
+        return page;
+    }
+
+    /**
+     * @param key - Key of the last product of the previous page
+     * @param id - ID of the last product of the previous page
+     * @param limit - Maximum number of products to return
+     * @return products - Up to limit products that come after (key, id), in order
+     */
+    public ArrayList<Product> pageAfter(K key, int id, int limit) {
+        ArrayList<Product> page = new ArrayList<Product>();
+        for (Entry<K> e : entries.tailSet(new Entry<K>(key, id, null), false)) {
+            if (page.size() >= limit) {
+                break;
+            }
+            page.add(e.product);
+        }
+        return page;
+    }
+
+    /**
+     * A product and the key it is filed under.
+     */
+    private static class Entry<K extends Comparable<K>> implements Comparable<Entry<K>> {
+        final K key;
+        final int id;
+        final Product product;
+
+        Entry(K key, int id, Product product) {
+            this.key = key;
+            this.id = id;
+            this.product = product;
+        }
+
+        public int compareTo(Entry<K> other) {
+            int c = key.compareTo(other.key);
+            return c != 0 ? c : Integer.compare(id, other.id);
+        }
+    }
+}
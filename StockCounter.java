@@ -0,0 +1,80 @@
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * class StockCounter holds the stock counts of one product, one counter per variant
+ * (e.g. a book has paperback, hardcover and e-book stock).
+ *
+ * Counters are changed with compare-and-set rather than locks, so threads ordering
+ * the same product never block one another and a reservation can never take a
+ * counter below zero.
+ */
+public class StockCounter {
+    private final AtomicIntegerArray counts;
+
+    /**
+     * Constructs a counter with every variant's stock set to 0.
+     * @param variants - Number of variants the product has
+     */
+    public StockCounter(int variants) {
+        counts = new AtomicIntegerArray(variants);
+    }
+
+    /**
+     * @return variants - Number of variants this counter tracks
+     */
+    public int variants() {
+        return counts.length();
+    }
+
+    /**
+     * @param variant - Variant slot
+     * @return stock - Current stock of the variant
+     */
+    public int get(int variant) {
+        return counts.get(variant);
+    }
+
+    /**
+     * @param variant - Variant slot
+     * @param stock - New stock of the variant
+     */
+    public void set(int variant, int stock) {
+        counts.set(variant, stock);
+    }
+
+    /**
+     * Takes units out of stock if, and only if, enough are available.
+     * @param variant - Variant slot
+     * @param units - Number of units wanted, must be positive
+     * @return boolean - True if the units were reserved, false if there was not enough stock
+     */
+    public boolean tryReserve(int variant, int units) {
+        while (true) {
+            int current = counts.get(variant);
+            if (current < units) {
+                return false;
+            }
+            if (counts.compareAndSet(variant, current, current - units)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Puts units back into stock, e.g. when a reservation is rolled back.
+     * @param variant - Variant slot
+     * @param units - Number of units to return
+     */
+    public void release(int variant, int units) {
+        counts.addAndGet(variant, units);
+    }
+
+    /**
+     * Unconditionally changes a variant's stock, which may leave it below zero.
+     * @param variant - Variant slot
+     * @param delta - Amount to add (negative to remove)
+     */
+    public void add(int variant, int delta) {
+        counts.addAndGet(variant, delta);
+    }
+}
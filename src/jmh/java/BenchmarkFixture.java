@@ -0,0 +1,142 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Random;
+
+import ecommerce.jmh.Fixture;
+
+/**
+ * class BenchmarkFixture builds an ECommerceSystem from a generated catalog for the
+ * JMH benchmarks in ecommerce.jmh, which cannot name the simulator's classes
+ * themselves (see Fixture).
+ */
+public class BenchmarkFixture implements Fixture {
+    private ECommerceSystem system;
+    private Path catalogFile;
+    private PrintStream console;
+    private final Random random = new Random(42);
+    private String[] customerIds;
+    private String[] bookIds;
+    private String plainId;
+    private String shoesId;
+    private String author;
+
+    @Override
+    public void open(int catalog, int customers, int orders) {
+        try {
+            catalogFile = Files.createTempFile("catalog", ".txt");
+            ECommerceBenchmark.writeCatalog(catalogFile, catalog, 42);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        system = new ECommerceSystem(catalogFile.toString());
+        customerIds = new String[customers];
+        for (int i = 0; i < customers; i++) {
+            customerIds[i] = system.createCustomer("Customer " + i, i + " Benchmark Road");
+        }
+        ArrayList<String> books = new ArrayList<String>();
+        for (int i = 0; i < catalog; i++) {
+            String id = Integer.toString(700 + i);     // The catalog's products are numbered from 700
+            if (system.isBook(id)) {
+                books.add(id);
+            }
+        }
+        bookIds = books.toArray(new String[0]);
+        author = bookIds.length > 0 ? ((Book) system.findProduct(bookIds[0])).getAuthor() : "Nobody";
+        plainId = system.createProduct("Benchmark Widget", Product.Category.GENERAL, 1.0, Integer.MAX_VALUE);
+        shoesId = system.createShoes("Benchmark Boot", 80.0, Integer.MAX_VALUE, "9Brown");
+        for (int i = 0; i < orders; i++) {
+            placeOrder();
+        }
+        console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));  // The listings print
+    }
+
+    @Override
+    public void close() {
+        if (console != null) {
+            System.setOut(console);
+        }
+        try {
+            Files.deleteIfExists(catalogFile);
+            Files.deleteIfExists(CatalogSnapshot.snapshotFor(catalogFile));
+        } catch (IOException e) {
+            // Temporary files, nothing more to do
+        }
+    }
+
+    private String customer() {
+        return customerIds[random.nextInt(customerIds.length)];
+    }
+
+    @Override
+    public Object orderPlain() {
+        return system.orderProduct(plainId, customer(), null);
+    }
+
+    @Override
+    public Object orderBook() {
+        if (bookIds.length == 0) {
+            return orderPlain();    // Catalogs too small to hold a book
+        }
+        return system.orderProduct(bookIds[random.nextInt(bookIds.length)], customer(), "EBook");
+    }
+
+    @Override
+    public Object orderShoes() {
+        return system.orderProduct(shoesId, customer(), "9Brown");
+    }
+
+    @Override
+    public Object addToCartAndOrderItems() {
+        String customerId = customer();
+        system.addToCart(plainId, customerId, null);
+        system.addToCart(shoesId, customerId, "9Brown");
+        system.addToCart(plainId, customerId, null);
+        return system.orderItems(customerId);
+    }
+
+    @Override
+    public String placeOrder() {
+        return system.orderProduct(plainId, customer(), null);
+    }
+
+    @Override
+    public Object shipOrder(String orderNumber) {
+        return system.shipOrder(orderNumber);
+    }
+
+    @Override
+    public void cancelOrder(String orderNumber) {
+        system.cancelOrder(orderNumber);
+    }
+
+    @Override
+    public void printStats() {
+        system.printStats();
+    }
+
+    @Override
+    public void sortByPrice() {
+        system.sortByPrice();
+    }
+
+    @Override
+    public void sortByName() {
+        system.sortByName();
+    }
+
+    @Override
+    public void printAverageRating() {
+        system.printAverageRating("BOOKS", 1);
+    }
+
+    @Override
+    public Object booksByAuthor() {
+        return system.booksByAuthor(author);
+    }
+}
@@ -0,0 +1,58 @@
+package ecommerce.jmh;
+
+/**
+ * interface Fixture is what the benchmarks see of an ECommerceSystem filled with
+ * generated products, customers and orders.
+ *
+ * The simulator's classes are in the default package, which a named package cannot
+ * import, while JMH only accepts benchmarks in a named package. So the benchmarks
+ * drive the system through this interface, and BenchmarkFixture, in the default
+ * package, implements it. Each method is a single call (or, for the cart, a single
+ * checkout) of the operation being measured.
+ */
+public interface Fixture {
+    /**
+     * Builds the system: a generated catalog of the given size, the given number of
+     * customers and that many background orders, so order stores, stats and order
+     * histories have the requested size. Console output is discarded until close().
+     * @param catalog - Number of products in the generated catalog
+     * @param customers - Number of registered customers
+     * @param orders - Number of orders placed before measuring
+     */
+    void open(int catalog, int customers, int orders);
+
+    /**
+     * Restores console output and deletes the generated catalog.
+     */
+    void close();
+
+    Object orderPlain();
+
+    Object orderBook();
+
+    Object orderShoes();
+
+    /**
+     * Adds two plain products and a pair of shoes to a customer's cart and orders it.
+     */
+    Object addToCartAndOrderItems();
+
+    /**
+     * @return orderNumber - A new order for a plain product, for shipping or cancelling
+     */
+    String placeOrder();
+
+    Object shipOrder(String orderNumber);
+
+    void cancelOrder(String orderNumber);
+
+    void printStats();
+
+    void sortByPrice();
+
+    void sortByName();
+
+    void printAverageRating();
+
+    Object booksByAuthor();
+}
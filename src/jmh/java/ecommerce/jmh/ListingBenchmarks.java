@@ -0,0 +1,34 @@
+package ecommerce.jmh;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+/**
+ * class ListingBenchmarks measures the listing commands. Their console output is
+ * discarded (see Fixture.open()), but still rendered.
+ */
+public class ListingBenchmarks extends SystemBenchmark {
+    @Benchmark
+    public void printStats() {
+        fixture.printStats();
+    }
+
+    @Benchmark
+    public void sortByPrice() {
+        fixture.sortByPrice();
+    }
+
+    @Benchmark
+    public void sortByName() {
+        fixture.sortByName();
+    }
+
+    @Benchmark
+    public void printAverageRating() {
+        fixture.printAverageRating();
+    }
+
+    @Benchmark
+    public Object booksByAuthor() {
+        return fixture.booksByAuthor();
+    }
+}
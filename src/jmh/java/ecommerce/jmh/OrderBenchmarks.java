@@ -0,0 +1,29 @@
+package ecommerce.jmh;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+/**
+ * class OrderBenchmarks measures placing orders: single products with no options,
+ * EBook and shoe options, and checking out a cart.
+ */
+public class OrderBenchmarks extends SystemBenchmark {
+    @Benchmark
+    public Object orderProduct() {
+        return fixture.orderPlain();
+    }
+
+    @Benchmark
+    public Object orderProductBook() {
+        return fixture.orderBook();
+    }
+
+    @Benchmark
+    public Object orderProductShoes() {
+        return fixture.orderShoes();
+    }
+
+    @Benchmark
+    public Object addToCartOrderItems() {
+        return fixture.addToCartAndOrderItems();
+    }
+}
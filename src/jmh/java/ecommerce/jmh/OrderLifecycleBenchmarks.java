@@ -0,0 +1,44 @@
+package ecommerce.jmh;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * class OrderLifecycleBenchmarks measures shipping and cancelling orders. Both use
+ * their order up, so every iteration places BATCH orders before it starts, untimed,
+ * and then ships or cancels all of them in one timed invocation.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+public class OrderLifecycleBenchmarks extends SystemBenchmark {
+    private static final int BATCH = 10000;
+
+    private final String[] placed = new String[BATCH];
+
+    @Setup(Level.Iteration)
+    public void placeOrders() {
+        for (int i = 0; i < BATCH; i++) {
+            placed[i] = fixture.placeOrder();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void shipOrder(Blackhole bh) {
+        for (String orderNumber : placed) {
+            bh.consume(fixture.shipOrder(orderNumber));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void cancelOrder() {
+        for (String orderNumber : placed) {
+            fixture.cancelOrder(orderNumber);
+        }
+    }
+}
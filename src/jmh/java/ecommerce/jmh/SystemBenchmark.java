@@ -0,0 +1,53 @@
+package ecommerce.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * class SystemBenchmark holds the system the benchmarks run against, built once per
+ * trial for each combination of the catalog, customer and order counts. The counts
+ * are JMH parameters, so scaling curves come from e.g.
+ *
+ *   -p catalog=1000,10000,100000 -p customers=1000 -p orders=10000,100000
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public abstract class SystemBenchmark {
+    @Param({"1000", "100000"})
+    public int catalog;
+
+    @Param({"1000"})
+    public int customers;
+
+    @Param({"10000"})
+    public int orders;
+
+    protected Fixture fixture;
+
+    @Setup(Level.Trial)
+    public void open() throws ReflectiveOperationException {
+        fixture = (Fixture) Class.forName("BenchmarkFixture").getDeclaredConstructor().newInstance();
+        fixture.open(catalog, customers, orders);
+    }
+
+    @TearDown(Level.Trial)
+    public void close() {
+        fixture.close();
+    }
+}